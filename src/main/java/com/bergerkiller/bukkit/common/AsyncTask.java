@@ -1,17 +1,40 @@
 package com.bergerkiller.bukkit.common;
 
+import org.bukkit.plugin.Plugin;
+
+import com.bergerkiller.bukkit.common.internal.CommonPlugin;
+import com.bergerkiller.bukkit.common.internal.WorkerPool;
 import com.bergerkiller.bukkit.common.utils.CommonUtil;
 
 /**
- * A wrapper class around a Thread that can:<br>
+ * A task that runs asynchronously, which can:<br>
+ * - Run once, after a delay or periodically at an interval<br>
  * - Create an infinite loop that can be stopped externally<br>
- * - Provide an error-free sleep function<br>
+ * - Provide an error-free sleep function<br><br>
+ *
+ * Tasks run on the unbounded pool of BKCommonLib, which re-uses idle threads; between runs and
+ * while waiting for a delay, no thread is occupied. Looped tasks are queued again after every run.
+ * Because the run method may block for as long as it likes, the bounded worker queue is not used.
+ * When the pool is unavailable, a thread is created for the task.
  */
 public abstract class AsyncTask implements Runnable {
-	private boolean running = false;
-	private boolean stoprequested = false;
-	private boolean looped = false;
-	private final Thread thread;
+	private volatile boolean running = false;
+	private volatile boolean stoprequested = false;
+	private long interval = -1;
+	private final String name;
+	private final int priority;
+	private Plugin plugin = null;
+	private final Runnable worker = new WorkerPool.DroppableTask() {
+		public void run() {
+			if (step()) {
+				submit(interval);
+			}
+		}
+
+		public void onDropped() {
+			finish();
+		}
+	};
 
 	/**
 	 * Initializes a new nameless Async task
@@ -22,7 +45,7 @@ public abstract class AsyncTask implements Runnable {
 
 	/**
 	 * Initializes a new named Async task
-	 * 
+	 *
 	 * @param name of the Async task
 	 */
 	public AsyncTask(final String name) {
@@ -30,41 +53,20 @@ public abstract class AsyncTask implements Runnable {
 	}
 
 	/**
-	 * Initializes a new named and prioritized Async task
-	 * 
+	 * Initializes a new named and prioritized Async task.
+	 * The name and priority are applied to the thread running the task while it runs.
+	 *
 	 * @param name of the Async task
 	 * @param priority for the Async task
 	 */
 	public AsyncTask(final String name, final int priority) {
-		final AsyncTask task = this;
-		this.thread = new Thread() {
-			public void run() {
-				task.running = true;
-				try {
-					if (task.looped) {
-						while (!task.stoprequested) {
-							task.run();
-						}
-					} else {
-						task.run();
-					}
-				} catch (Throwable t) {
-					CommonUtil.printFilteredStackTrace(t);
-				}
-				task.running = false;
-			}
-		};
-		if (priority >= 1 && priority <= 10) {
-			this.thread.setPriority(priority);
-		}
-		if (name != null) {
-			this.thread.setName(name);
-		}
+		this.name = name;
+		this.priority = priority;
 	}
 
 	/**
 	 * A sleep method that handles an interruption automatically
-	 * 
+	 *
 	 * @param msdelay to sleep
 	 */
 	public static void sleep(long msdelay) {
@@ -76,7 +78,7 @@ public abstract class AsyncTask implements Runnable {
 
 	/**
 	 * Checks if this Async task is running
-	 * 
+	 *
 	 * @return True if running, False if not
 	 */
 	public boolean isRunning() {
@@ -85,7 +87,7 @@ public abstract class AsyncTask implements Runnable {
 
 	/**
 	 * Checks if this Async task is requested to stop
-	 * 
+	 *
 	 * @return True if it should stop, False if not
 	 */
 	public boolean isStopRequested() {
@@ -94,7 +96,7 @@ public abstract class AsyncTask implements Runnable {
 
 	/**
 	 * Starts this Async task (once, not looped)
-	 * 
+	 *
 	 * @return This Async task
 	 */
 	public AsyncTask start() {
@@ -102,25 +104,130 @@ public abstract class AsyncTask implements Runnable {
 	}
 
 	/**
-	 * Starts this Async task
-	 * 
-	 * @param looped state, True to infinitely loop the run method of this Thread
+	 * Starts this Async task.
+	 * When looped, the run method is called again as soon as it returns, until this task is stopped.
+	 * Tasks that have to wait between runs should use {@link #start(long, long)} instead.
+	 *
+	 * @param looped state, True to infinitely loop the run method of this task
 	 * @return This Async task
 	 */
 	public AsyncTask start(boolean looped) {
+		return this.start(0, looped ? 0 : -1);
+	}
+
+	/**
+	 * Starts this Async task after a delay, running it once
+	 *
+	 * @param delay in milliseconds
+	 * @return This Async task
+	 */
+	public AsyncTask start(long delay) {
+		return this.start(delay, -1);
+	}
+
+	/**
+	 * Starts this Async task after a delay, and keeps running it at the interval until it is stopped.
+	 * The interval is the time between the end of one run and the start of the next.
+	 *
+	 * @param delay in milliseconds
+	 * @param interval in milliseconds, 0 to run again immediately and -1 to run only once
+	 * @return This Async task
+	 */
+	public AsyncTask start(long delay, long interval) {
+		synchronized (this) {
+			if (this.running) {
+				return this;
+			}
+			this.running = true;
+		}
 		this.stoprequested = false;
-		this.looped = looped;
-		try {
-			this.thread.start();
-		} catch (IllegalThreadStateException ex) {
-			ex.printStackTrace();
+		this.interval = interval;
+		if (this.plugin == null) {
+			this.plugin = CommonUtil.getPluginByClass(getClass());
 		}
+		this.submit(delay);
 		return this;
 	}
 
+	/**
+	 * Runs this task a single time on the calling thread
+	 *
+	 * @return True if it should run again, False if it finished
+	 */
+	private boolean step() {
+		if (this.stoprequested) {
+			this.finish();
+			return false;
+		}
+		final Thread thread = Thread.currentThread();
+		final String oldName = thread.getName();
+		final int oldPriority = thread.getPriority();
+		boolean failed = false;
+		try {
+			if (this.name != null) {
+				thread.setName(this.name);
+			}
+			if (this.priority >= Thread.MIN_PRIORITY && this.priority <= Thread.MAX_PRIORITY) {
+				thread.setPriority(this.priority);
+			}
+			this.run();
+		} catch (Throwable t) {
+			CommonUtil.printFilteredStackTrace(t);
+			failed = true;
+		} finally {
+			thread.setName(oldName);
+			thread.setPriority(oldPriority);
+		}
+		if (failed || this.interval < 0 || this.stoprequested) {
+			this.finish();
+			return false;
+		}
+		return true;
+	}
+
+	private void submit(long delay) {
+		if (CommonPlugin.hasInstance()) {
+			final WorkerPool pool = CommonPlugin.getInstance().getWorkerPool();
+			if (delay <= 0 ? pool.executeUnbounded(this.plugin, this.worker) : pool.scheduleUnbounded(this.plugin, this.worker, delay)) {
+				return;
+			}
+			if (pool.isShutdown()) {
+				// Pool shut down between runs: the task ends
+				this.finish();
+				return;
+			}
+		}
+		// Worker pool is unavailable: run on a thread of our own
+		this.startThread(delay);
+	}
+
+	private void startThread(final long delay) {
+		final Thread thread = new Thread() {
+			public void run() {
+				if (delay > 0) {
+					AsyncTask.sleep(delay);
+				}
+				while (step()) {
+					if (interval > 0) {
+						AsyncTask.sleep(interval);
+					}
+				}
+			}
+		};
+		if (this.name != null) {
+			thread.setName(this.name);
+		}
+		thread.start();
+	}
+
+	private synchronized void finish() {
+		this.running = false;
+		this.notifyAll();
+	}
+
 	/**
 	 * Stops an Async task
-	 * 
+	 *
 	 * @param task to stop, if null it is ignored
 	 * @return True if stopped, False if not
 	 */
@@ -134,7 +241,7 @@ public abstract class AsyncTask implements Runnable {
 
 	/**
 	 * Stops this Async task
-	 * 
+	 *
 	 * @return This Async task
 	 */
 	public AsyncTask stop() {
@@ -144,12 +251,18 @@ public abstract class AsyncTask implements Runnable {
 
 	/**
 	 * Waits until this Async task finished executing
-	 * 
+	 *
 	 * @return This Async task
 	 */
 	public final AsyncTask waitFinished() {
-		while (this.running) {
-			sleep(20);
+		synchronized (this) {
+			while (this.running) {
+				try {
+					this.wait();
+				} catch (InterruptedException ex) {
+					break;
+				}
+			}
 		}
 		return this;
 	}
@@ -0,0 +1,285 @@
+package com.bergerkiller.bukkit.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.minecraft.server.Block;
+import net.minecraft.server.Chunk;
+import net.minecraft.server.ChunkSection;
+import net.minecraft.server.EnumSkyBlock;
+import net.minecraft.server.IContainer;
+import net.minecraft.server.WorldServer;
+
+import org.bukkit.World;
+
+import com.bergerkiller.bukkit.common.internal.CommonNMS;
+import com.bergerkiller.bukkit.common.reflection.classes.ChunkRef;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+import com.bergerkiller.bukkit.common.wrappers.LongHashMap;
+
+/**
+ * Performs a large amount of block changes in a single World efficiently.<br>
+ * Block types and data are written directly into the chunk sections, similar to
+ * {@link com.bergerkiller.bukkit.common.utils.ChunkUtil#setBlockFast(org.bukkit.Chunk, int, int, int, int, int) ChunkUtil.setBlockFast}.
+ * Lighting and client updates are deferred until {@link #commit()} is called, at which point
+ * the height map and sky light of every affected chunk are re-calculated once, block light is only
+ * spread where light is present, and the changes are sent to the players viewing the chunk once.<br><br>
+ *
+ * No physics are applied to the changed blocks. Blocks that hold a tile entity (chests, furnaces, signs)
+ * are set using the regular chunk logic, so their tile entities are created and removed properly.<br>
+ * A session must only be used from the main thread.
+ */
+public class BlockEditSession {
+	/**
+	 * The amount of changed blocks in a chunk after which the chunk sections are re-sent as a whole
+	 */
+	private static final int MAX_BLOCK_CHANGES = 64;
+	private final World world;
+	private final WorldServer worldHandle;
+	private LongHashMap<ChunkEdit> chunks = new LongHashMap<ChunkEdit>();
+	private final List<ChunkEdit> chunkList = new ArrayList<ChunkEdit>();
+	private ChunkEdit lastChunk = null;
+	private int changedCount = 0;
+
+	public BlockEditSession(World world) {
+		this.world = world;
+		this.worldHandle = CommonNMS.getNative(world);
+	}
+
+	/**
+	 * Gets the World this session edits blocks in
+	 *
+	 * @return the World
+	 */
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Gets the amount of blocks changed since the last commit
+	 *
+	 * @return changed block count
+	 */
+	public int getChangedCount() {
+		return this.changedCount;
+	}
+
+	/**
+	 * Sets the type id of a block, resetting the data to 0
+	 *
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @param typeId to set to
+	 * @return True if the block changed, False if not
+	 */
+	public boolean setBlock(int x, int y, int z, int typeId) {
+		return setBlock(x, y, z, typeId, 0);
+	}
+
+	/**
+	 * Sets the type id and data of a block.
+	 * The chunk the block is in is loaded if needed.
+	 *
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @param typeId to set to
+	 * @param data to set to
+	 * @return True if the block changed, False if not
+	 */
+	public boolean setBlock(int x, int y, int z, int typeId, int data) {
+		if (y < 0 || y >= this.world.getMaxHeight()) {
+			return false;
+		}
+		final ChunkEdit edit = getChunkEdit(x >> 4, z >> 4);
+		final int secIndex = y >> 4;
+		ChunkSection section = edit.sections[secIndex];
+		final int oldTypeId;
+		final int oldData;
+		if (section == null) {
+			oldTypeId = oldData = 0;
+		} else {
+			oldTypeId = section.getTypeId(x & 0xf, y & 0xf, z & 0xf);
+			oldData = section.getData(x & 0xf, y & 0xf, z & 0xf);
+		}
+		if (oldTypeId == typeId && oldData == data) {
+			return false;
+		}
+		if (isContainer(oldTypeId) || isContainer(typeId)) {
+			// Let the chunk deal with creating and removing the tile entities
+			if (!ChunkRef.setBlock(edit.chunk, x, y, z, typeId, data)) {
+				return false;
+			}
+		} else {
+			if (section == null) {
+				section = edit.sections[secIndex] = new ChunkSection(secIndex << 4, !this.worldHandle.worldProvider.f);
+				edit.skyLight = true;
+			}
+			section.setTypeId(x & 0xf, y & 0xf, z & 0xf, typeId);
+			section.setData(x & 0xf, y & 0xf, z & 0xf, data);
+		}
+		// Blocks that let through a different amount of light change the height map and sky light of the chunk
+		// Together with light sources, they also require a block light spread update
+		final boolean opacityChanged = Block.lightBlock[oldTypeId] != Block.lightBlock[typeId];
+		if (opacityChanged) {
+			edit.skyLight = true;
+		}
+		if (edit.add(x, y, z, opacityChanged || Block.lightEmission[oldTypeId] != Block.lightEmission[typeId])) {
+			this.changedCount++;
+		}
+		return true;
+	}
+
+	/**
+	 * Re-calculates the lighting of all changed chunks and sends the changes to the players viewing them.
+	 * After committing, the session can be used for new changes.
+	 */
+	public void commit() {
+		for (ChunkEdit edit : this.chunkList) {
+			edit.commit();
+		}
+		this.chunkList.clear();
+		this.chunks = new LongHashMap<ChunkEdit>();
+		this.lastChunk = null;
+		this.changedCount = 0;
+	}
+
+	private ChunkEdit getChunkEdit(int cx, int cz) {
+		if (this.lastChunk != null && this.lastChunk.cx == cx && this.lastChunk.cz == cz) {
+			return this.lastChunk;
+		}
+		final long key = MathUtil.longHashToLong(cx, cz);
+		ChunkEdit edit = this.chunks.get(key);
+		if (edit == null) {
+			edit = new ChunkEdit(this.worldHandle.getChunkAt(cx, cz));
+			this.chunks.put(key, edit);
+			this.chunkList.add(edit);
+		}
+		this.lastChunk = edit;
+		return edit;
+	}
+
+	private static boolean isContainer(int typeId) {
+		return Block.byId[typeId] instanceof IContainer;
+	}
+
+	/**
+	 * Checks whether a block and all blocks next to it have no block light.
+	 * When a block that does not emit light changes in such an area, there is no light to spread.
+	 */
+	private boolean isBlockLightDark(int x, int y, int z) {
+		return this.worldHandle.b(EnumSkyBlock.BLOCK, x, y, z) == 0 &&
+				this.worldHandle.b(EnumSkyBlock.BLOCK, x - 1, y, z) == 0 &&
+				this.worldHandle.b(EnumSkyBlock.BLOCK, x + 1, y, z) == 0 &&
+				this.worldHandle.b(EnumSkyBlock.BLOCK, x, y - 1, z) == 0 &&
+				this.worldHandle.b(EnumSkyBlock.BLOCK, x, y + 1, z) == 0 &&
+				this.worldHandle.b(EnumSkyBlock.BLOCK, x, y, z - 1) == 0 &&
+				this.worldHandle.b(EnumSkyBlock.BLOCK, x, y, z + 1) == 0;
+	}
+
+	/**
+	 * Keeps track of the changed block positions in a single chunk
+	 */
+	private class ChunkEdit {
+		public final int cx, cz;
+		public final Chunk chunk;
+		public final ChunkSection[] sections;
+		/**
+		 * Changed positions relative to the chunk, stored as (x << 12) | (z << 8) | y
+		 */
+		private short[] positions = new short[MAX_BLOCK_CHANGES];
+		private int count = 0;
+		/**
+		 * Bit sets indexed by position, of the positions that were changed and that need a light update
+		 */
+		private final long[] changed = new long[1024];
+		private long[] relight = null;
+		/**
+		 * Whether the height map and sky light of the chunk have to be re-calculated
+		 */
+		public boolean skyLight = false;
+
+		public ChunkEdit(Chunk chunk) {
+			this.chunk = chunk;
+			this.cx = chunk.x;
+			this.cz = chunk.z;
+			this.sections = chunk.i();
+		}
+
+		/**
+		 * Records a changed position, if it was not recorded before
+		 *
+		 * @return True if the position was newly recorded, False if it was recorded before
+		 */
+		public boolean add(int x, int y, int z, boolean relight) {
+			final int pos = ((x & 0xf) << 12) | ((z & 0xf) << 8) | (y & 0xff);
+			if (relight) {
+				if (this.relight == null) {
+					this.relight = new long[1024];
+				}
+				this.relight[pos >> 6] |= 1L << pos;
+			}
+			if ((this.changed[pos >> 6] & (1L << pos)) != 0) {
+				// Changed before, already recorded
+				return false;
+			}
+			this.changed[pos >> 6] |= 1L << pos;
+			if (this.count == this.positions.length) {
+				short[] newPositions = new short[this.positions.length << 1];
+				System.arraycopy(this.positions, 0, newPositions, 0, this.count);
+				this.positions = newPositions;
+			}
+			this.positions[this.count++] = (short) pos;
+			return true;
+		}
+
+		public void commit() {
+			final int bx = this.cx << 4;
+			final int bz = this.cz << 4;
+			int x, y, z, pos;
+
+			// Height map and sky light are re-calculated for the whole chunk at once, only if opacity changed
+			if (this.skyLight) {
+				this.chunk.initLighting();
+			}
+			ChunkRef.modified.set(this.chunk, true);
+
+			// Positions of which the light emission or opacity changed require a block light spread update
+			// In areas without block light, only new light sources have light to spread
+			if (this.relight != null) {
+				for (int i = 0; i < this.count; i++) {
+					pos = this.positions[i] & 0xffff;
+					if ((this.relight[pos >> 6] & (1L << pos)) == 0) {
+						continue;
+					}
+					x = bx + (pos >> 12);
+					y = pos & 0xff;
+					z = bz + ((pos >> 8) & 0xf);
+					if (Block.lightEmission[this.chunk.getTypeId(x & 0xf, y, z & 0xf)] == 0 && isBlockLightDark(x, y, z)) {
+						continue;
+					}
+					worldHandle.c(EnumSkyBlock.BLOCK, x, y, z);
+				}
+			}
+
+			// Player chunks send single block changes up to a limit, after that all dirty sections are re-sent
+			// Only one block per section needs to be marked dirty once that limit is reached
+			// Positions are recorded only once, so the limit applies to the amount of distinct changed blocks
+			int sectionMask = 0;
+			for (int i = 0; i < this.count; i++) {
+				pos = this.positions[i] & 0xffff;
+				y = pos & 0xff;
+				if (i >= MAX_BLOCK_CHANGES) {
+					if ((sectionMask & (1 << (y >> 4))) != 0) {
+						continue;
+					}
+				}
+				sectionMask |= 1 << (y >> 4);
+				x = bx + (pos >> 12);
+				z = bz + ((pos >> 8) & 0xf);
+				worldHandle.notify(x, y, z);
+			}
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package com.bergerkiller.bukkit.common;
+
+import net.minecraft.server.ChunkSection;
+import net.minecraft.server.WorldServer;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.BlockFace;
+import org.bukkit.util.Vector;
+
+import com.bergerkiller.bukkit.common.internal.CommonNMS;
+import com.bergerkiller.bukkit.common.wrappers.BlockInfo;
+
+/**
+ * Casts rays through the blocks of a World, walking every block the ray passes through
+ * one at a time, and stops at the first block that is not passable.<br>
+ * Block types are read directly from the chunk sections, and the outcome is written into a re-usable
+ * {@link RayTraceResult}, so tracing does not allocate any memory.<br><br>
+ *
+ * Blocks are treated as full cubes: a block either stops the ray or it does not, based on the type id.
+ * By default, the passability of a type is obtained from {@link BlockInfo#isPassable()}, which can be
+ * changed per tracer using {@link #setPassable(int, boolean)} (for example, to look through glass).
+ * Rays stop without a hit when they enter a chunk that is not loaded; chunks are never loaded by the tracer.<br>
+ * A tracer must only be used from the main thread, and should not be kept between ticks.
+ */
+public class BlockRayTracer {
+	private static boolean[] defaultPassable = null;
+	private final World world;
+	private final WorldServer worldHandle;
+	private final int maxHeight;
+	private final RayTraceResult tmpResult = new RayTraceResult();
+	private boolean[] passable;
+	private boolean passableShared;
+	private ChunkSection[] lastSections = null;
+	private int lastCx, lastCz;
+
+	public BlockRayTracer(World world) {
+		this.world = world;
+		this.worldHandle = CommonNMS.getNative(world);
+		this.maxHeight = world.getMaxHeight();
+		this.passable = getDefaultPassable();
+		this.passableShared = true;
+	}
+
+	private static boolean[] getDefaultPassable() {
+		if (defaultPassable == null) {
+			final boolean[] values = new boolean[4096];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = BlockInfo.get(i).isPassable();
+			}
+			defaultPassable = values;
+		}
+		return defaultPassable;
+	}
+
+	/**
+	 * Gets the World this tracer casts rays in
+	 *
+	 * @return the World
+	 */
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Gets whether rays pass through blocks of a certain type
+	 *
+	 * @param typeId of the block
+	 * @return True if passable, False if not
+	 */
+	public boolean isPassable(int typeId) {
+		return this.passable[typeId & 0xfff];
+	}
+
+	/**
+	 * Sets whether rays pass through blocks of a certain type
+	 *
+	 * @param typeId of the block
+	 * @param passable state to set to
+	 */
+	public void setPassable(int typeId, boolean passable) {
+		if (this.passableShared) {
+			this.passable = this.passable.clone();
+			this.passableShared = false;
+		}
+		this.passable[typeId & 0xfff] = passable;
+	}
+
+	/**
+	 * Casts a ray from a Location into the direction it is looking
+	 *
+	 * @param start Location of the ray
+	 * @param maxDistance of the ray
+	 * @param result to write the outcome to
+	 * @return True if a block was hit, False if not
+	 */
+	public boolean trace(Location start, double maxDistance, RayTraceResult result) {
+		final Vector dir = start.getDirection();
+		return trace(start.getX(), start.getY(), start.getZ(), dir.getX(), dir.getY(), dir.getZ(), maxDistance, result);
+	}
+
+	/**
+	 * Casts a ray from a start point into a direction
+	 *
+	 * @param startX of the ray
+	 * @param startY of the ray
+	 * @param startZ of the ray
+	 * @param dirX of the ray
+	 * @param dirY of the ray
+	 * @param dirZ of the ray
+	 * @param maxDistance of the ray
+	 * @param result to write the outcome to
+	 * @return True if a block was hit, False if not
+	 */
+	public boolean trace(double startX, double startY, double startZ, double dirX, double dirY, double dirZ, double maxDistance, RayTraceResult result) {
+		this.lastSections = null;
+		return traceRay(startX, startY, startZ, dirX, dirY, dirZ, maxDistance, result);
+	}
+
+	/**
+	 * Casts a ray from one point to another
+	 *
+	 * @param startX of the ray
+	 * @param startY of the ray
+	 * @param startZ of the ray
+	 * @param endX of the ray
+	 * @param endY of the ray
+	 * @param endZ of the ray
+	 * @param result to write the outcome to
+	 * @return True if a block was hit, False if not
+	 */
+	public boolean traceTo(double startX, double startY, double startZ, double endX, double endY, double endZ, RayTraceResult result) {
+		this.lastSections = null;
+		return traceSegment(startX, startY, startZ, endX, endY, endZ, result);
+	}
+
+	/**
+	 * Checks whether no block stops a ray cast from one point to another
+	 *
+	 * @param startX of the ray
+	 * @param startY of the ray
+	 * @param startZ of the ray
+	 * @param endX of the ray
+	 * @param endY of the ray
+	 * @param endZ of the ray
+	 * @return True if the end point can be seen from the start point, False if not
+	 */
+	public boolean canSee(double startX, double startY, double startZ, double endX, double endY, double endZ) {
+		this.lastSections = null;
+		return !traceSegment(startX, startY, startZ, endX, endY, endZ, this.tmpResult);
+	}
+
+	/**
+	 * Casts many rays at once, each from one point to another.
+	 * The rays are stored in an array with six values per ray: startX, startY, startZ, endX, endY and endZ.
+	 * Chunk data is shared between the rays, so rays cast close to each other are traced faster.
+	 *
+	 * @param rays to cast
+	 * @param results to write the outcome of every ray to, at least as long as the amount of rays
+	 * @return the amount of rays that hit a block
+	 */
+	public int traceAll(double[] rays, RayTraceResult[] results) {
+		this.lastSections = null;
+		final int count = rays.length / 6;
+		int hits = 0;
+		for (int i = 0; i < count; i++) {
+			final int r = i * 6;
+			if (traceSegment(rays[r], rays[r + 1], rays[r + 2], rays[r + 3], rays[r + 4], rays[r + 5], results[i])) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Checks the line of sight of many rays at once, each from one point to another.
+	 * The rays are stored in an array with six values per ray: startX, startY, startZ, endX, endY and endZ.
+	 * Chunk data is shared between the rays, so rays cast close to each other are traced faster.
+	 *
+	 * @param rays to check
+	 * @param visible to write whether the end point of every ray can be seen, at least as long as the amount of rays
+	 * @return the amount of rays of which the end point can be seen
+	 */
+	public int canSeeAll(double[] rays, boolean[] visible) {
+		this.lastSections = null;
+		final int count = rays.length / 6;
+		int seen = 0;
+		for (int i = 0; i < count; i++) {
+			final int r = i * 6;
+			visible[i] = !traceSegment(rays[r], rays[r + 1], rays[r + 2], rays[r + 3], rays[r + 4], rays[r + 5], this.tmpResult);
+			if (visible[i]) {
+				seen++;
+			}
+		}
+		return seen;
+	}
+
+	private boolean traceSegment(double startX, double startY, double startZ, double endX, double endY, double endZ, RayTraceResult result) {
+		final double dx = endX - startX;
+		final double dy = endY - startY;
+		final double dz = endZ - startZ;
+		return traceRay(startX, startY, startZ, dx, dy, dz, Math.sqrt(dx * dx + dy * dy + dz * dz), result);
+	}
+
+	private boolean traceRay(double startX, double startY, double startZ, double dirX, double dirY, double dirZ, double maxDistance, RayTraceResult result) {
+		final double length = Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+		if (length > 0.0) {
+			dirX /= length;
+			dirY /= length;
+			dirZ /= length;
+		} else {
+			dirX = dirY = dirZ = 0.0;
+		}
+		int x = (int) Math.floor(startX);
+		int y = (int) Math.floor(startY);
+		int z = (int) Math.floor(startZ);
+		final int stepX = dirX > 0.0 ? 1 : (dirX < 0.0 ? -1 : 0);
+		final int stepY = dirY > 0.0 ? 1 : (dirY < 0.0 ? -1 : 0);
+		final int stepZ = dirZ > 0.0 ? 1 : (dirZ < 0.0 ? -1 : 0);
+		final double deltaX = stepX == 0 ? Double.POSITIVE_INFINITY : Math.abs(1.0 / dirX);
+		final double deltaY = stepY == 0 ? Double.POSITIVE_INFINITY : Math.abs(1.0 / dirY);
+		final double deltaZ = stepZ == 0 ? Double.POSITIVE_INFINITY : Math.abs(1.0 / dirZ);
+		double maxX = stepX == 0 ? Double.POSITIVE_INFINITY : ((stepX > 0 ? (x + 1 - startX) : (startX - x)) * deltaX);
+		double maxY = stepY == 0 ? Double.POSITIVE_INFINITY : ((stepY > 0 ? (y + 1 - startY) : (startY - y)) * deltaY);
+		double maxZ = stepZ == 0 ? Double.POSITIVE_INFINITY : ((stepZ > 0 ? (z + 1 - startZ) : (startZ - z)) * deltaZ);
+		// The face of the next block the ray enters through is opposite to the direction moved in
+		final BlockFace faceX = stepX > 0 ? BlockFace.WEST : BlockFace.EAST;
+		final BlockFace faceY = stepY > 0 ? BlockFace.DOWN : BlockFace.UP;
+		final BlockFace faceZ = stepZ > 0 ? BlockFace.NORTH : BlockFace.SOUTH;
+		BlockFace face = BlockFace.SELF;
+		double distance = 0.0;
+		int typeId;
+		while (true) {
+			if (y < 0) {
+				if (stepY <= 0) {
+					break;
+				}
+			} else if (y >= this.maxHeight) {
+				if (stepY >= 0) {
+					break;
+				}
+			} else {
+				typeId = getTypeId(x, y, z);
+				if (typeId == -1) {
+					break;
+				}
+				if (!this.passable[typeId]) {
+					result.setHit(this.world, x, y, z, typeId, face, distance);
+					return true;
+				}
+			}
+
+			// Move to the next block along the axis with the nearest block boundary
+			if (maxX < maxY && maxX < maxZ) {
+				distance = maxX;
+				maxX += deltaX;
+				x += stepX;
+				face = faceX;
+			} else if (maxY < maxZ) {
+				distance = maxY;
+				maxY += deltaY;
+				y += stepY;
+				face = faceY;
+			} else {
+				distance = maxZ;
+				maxZ += deltaZ;
+				z += stepZ;
+				face = faceZ;
+			}
+			if (distance > maxDistance) {
+				break;
+			}
+		}
+		result.setMiss(this.world);
+		return false;
+	}
+
+	/**
+	 * Gets the type id of a block, without loading chunks
+	 *
+	 * @return block type id, or -1 if the chunk is not loaded
+	 */
+	private int getTypeId(int x, int y, int z) {
+		final int cx = x >> 4;
+		final int cz = z >> 4;
+		if (this.lastSections == null || this.lastCx != cx || this.lastCz != cz) {
+			if (!this.worldHandle.chunkProviderServer.isChunkLoaded(cx, cz)) {
+				return -1;
+			}
+			this.lastSections = this.worldHandle.getChunkAt(cx, cz).i();
+			this.lastCx = cx;
+			this.lastCz = cz;
+		}
+		final ChunkSection section = this.lastSections[y >> 4];
+		return section == null ? 0 : section.getTypeId(x & 0xf, y & 0xf, z & 0xf);
+	}
+}
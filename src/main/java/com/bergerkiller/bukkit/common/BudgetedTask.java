@@ -0,0 +1,95 @@
+package com.bergerkiller.bukkit.common;
+
+import java.util.Iterator;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+import com.bergerkiller.bukkit.common.internal.CommonPlugin;
+
+/**
+ * A Task that performs a large job in small steps, spread out over multiple ticks.<br>
+ * Once started, {@link #run()} is called repeatedly every tick until the time budget of that tick
+ * is used up, and continues in the next tick. This repeats until the task is stopped using {@link #stop()}.
+ * Every call to run() should therefore only perform a small unit of work.<br><br>
+ *
+ * The time budget is shared fairly between the plugins that have budgeted tasks running,
+ * and is lowered automatically while the server is lagging behind.
+ */
+public abstract class BudgetedTask extends Task {
+	private boolean queued = false;
+
+	public BudgetedTask(JavaPlugin plugin) {
+		super(plugin);
+	}
+
+	/**
+	 * Creates a budgeted task that runs the work units provided by an iterator, one every step.
+	 * The task stops itself once the iterator has no more work units.
+	 *
+	 * @param plugin owning the task
+	 * @param work units to run
+	 * @return new budgeted task (not yet started)
+	 */
+	public static BudgetedTask of(JavaPlugin plugin, final Iterator<? extends Runnable> work) {
+		return new BudgetedTask(plugin) {
+			public void run() {
+				if (work.hasNext()) {
+					work.next().run();
+				} else {
+					stop();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Checks whether this Task is started and not yet stopped
+	 *
+	 * @return True if running, False if not
+	 */
+	@Override
+	public boolean isRunning() {
+		return this.queued;
+	}
+
+	@Override
+	public boolean isQueued() {
+		return this.queued;
+	}
+
+	@Override
+	public Task stop() {
+		if (this.queued) {
+			this.queued = false;
+			if (CommonPlugin.hasInstance()) {
+				CommonPlugin.getInstance().getBudgetedTaskScheduler().remove(this);
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public Task start() {
+		return start(0);
+	}
+
+	@Override
+	public Task start(long delay) {
+		this.queued = true;
+		CommonPlugin.getInstance().getBudgetedTaskScheduler().add(this, delay);
+		return this;
+	}
+
+	/**
+	 * Starts this Task after the delay specified.
+	 * The interval is ignored, as a budgeted task keeps running every tick until it is stopped.
+	 *
+	 * @param delay in ticks
+	 * @param interval (ignored)
+	 * @return This Task
+	 */
+	@Override
+	public Task start(long delay, long interval) {
+		return start(delay);
+	}
+}
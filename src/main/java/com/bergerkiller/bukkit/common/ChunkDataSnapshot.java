@@ -0,0 +1,236 @@
+package com.bergerkiller.bukkit.common;
+
+import net.minecraft.server.BiomeBase;
+import net.minecraft.server.Chunk;
+
+import org.bukkit.block.Biome;
+import org.bukkit.craftbukkit.block.CraftBlock;
+
+import com.bergerkiller.bukkit.common.internal.CommonNMS;
+import com.bergerkiller.bukkit.common.reflection.classes.ChunkRef;
+import com.bergerkiller.bukkit.common.reflection.classes.ChunkSectionRef;
+import com.bergerkiller.bukkit.common.reflection.classes.NibbleArrayRef;
+
+/**
+ * An immutable copy of the block ids, block data, light levels, height map and biomes of a chunk.<br>
+ * Snapshots are created on the main thread using {@link com.bergerkiller.bukkit.common.utils.ChunkUtil#snapshot(org.bukkit.Chunk)
+ * ChunkUtil.snapshot}, after which they can be safely read from any thread.<br><br>
+ *
+ * All coordinates are relative to the chunk. The x and z coordinates are masked to stay within the chunk,
+ * y-coordinates outside of the chunk are treated as air.
+ */
+public class ChunkDataSnapshot {
+	private static final int SECTION_VOLUME = 16 * 16 * 16;
+	private final String worldName;
+	private final int x, z;
+	private final boolean hasSkyLight;
+	private final Section[] sections;
+	private final int[] heightMap;
+	private final byte[] biomes;
+
+	/**
+	 * Copies the data of a chunk. This must be called from the main thread.
+	 *
+	 * @param chunk to copy
+	 */
+	public ChunkDataSnapshot(org.bukkit.Chunk chunk) {
+		final Chunk handle = CommonNMS.getNative(chunk);
+		this.worldName = chunk.getWorld().getName();
+		this.x = chunk.getX();
+		this.z = chunk.getZ();
+		this.hasSkyLight = !handle.world.worldProvider.f;
+		this.heightMap = handle.heightMap.clone();
+		this.biomes = ChunkRef.biomeData.invoke(handle).clone();
+		final Object[] chunkSections = ChunkRef.getSections(handle);
+		this.sections = new Section[chunkSections.length];
+		for (int i = 0; i < chunkSections.length; i++) {
+			if (chunkSections[i] != null) {
+				this.sections[i] = new Section(chunkSections[i]);
+			}
+		}
+	}
+
+	/**
+	 * Gets the name of the World the chunk was in
+	 *
+	 * @return World name
+	 */
+	public String getWorldName() {
+		return this.worldName;
+	}
+
+	/**
+	 * Gets the chunk x-coordinate
+	 *
+	 * @return chunk x
+	 */
+	public int getX() {
+		return this.x;
+	}
+
+	/**
+	 * Gets the chunk z-coordinate
+	 *
+	 * @return chunk z
+	 */
+	public int getZ() {
+		return this.z;
+	}
+
+	/**
+	 * Checks whether the 16x16x16 section containing a y-coordinate was never initialized by the chunk.
+	 * Such a section contains only air
+	 *
+	 * @param y - coordinate within the section
+	 * @return True if the section is empty, False if not
+	 */
+	public boolean isSectionEmpty(int y) {
+		return getSection(y) == null;
+	}
+
+	/**
+	 * Gets the height of a given column
+	 *
+	 * @param x - coordinate of the block column
+	 * @param z - coordinate of the block column
+	 * @return column height
+	 */
+	public int getHeight(int x, int z) {
+		return this.heightMap[((z & 0xf) << 4) | (x & 0xf)];
+	}
+
+	/**
+	 * Gets the raw biome Id of a given column
+	 *
+	 * @param x - coordinate of the block column
+	 * @param z - coordinate of the block column
+	 * @return biome Id
+	 */
+	public int getBiomeId(int x, int z) {
+		return this.biomes[((z & 0xf) << 4) | (x & 0xf)] & 0xff;
+	}
+
+	/**
+	 * Gets the biome of a given column
+	 *
+	 * @param x - coordinate of the block column
+	 * @param z - coordinate of the block column
+	 * @return biome, or null if unknown
+	 */
+	public Biome getBiome(int x, int z) {
+		final BiomeBase[] biomeBases = BiomeBase.biomes;
+		final int id = getBiomeId(x, z);
+		if (id >= biomeBases.length || biomeBases[id] == null) {
+			return null;
+		}
+		return CraftBlock.biomeBaseToBiome(biomeBases[id]);
+	}
+
+	/**
+	 * Gets the block type Id
+	 *
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @return block type Id
+	 */
+	public int getBlockTypeId(int x, int y, int z) {
+		final Section section = getSection(y);
+		if (section == null) {
+			return 0;
+		}
+		final int index = getIndex(x, y, z);
+		int typeId = section.blockIds[index] & 0xff;
+		if (section.extBlockIds != null) {
+			typeId |= getNibble(section.extBlockIds, index) << 8;
+		}
+		return typeId;
+	}
+
+	/**
+	 * Gets the block data
+	 *
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @return block data
+	 */
+	public int getBlockData(int x, int y, int z) {
+		final Section section = getSection(y);
+		return section == null ? 0 : getNibble(section.blockData, getIndex(x, y, z));
+	}
+
+	/**
+	 * Gets the block light level
+	 *
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @return Block light level
+	 */
+	public int getBlockLight(int x, int y, int z) {
+		final Section section = getSection(y);
+		return section == null ? 0 : getNibble(section.blockLight, getIndex(x, y, z));
+	}
+
+	/**
+	 * Gets the sky light level
+	 *
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @return Sky light level
+	 */
+	public int getSkyLight(int x, int y, int z) {
+		if (!this.hasSkyLight) {
+			return 0;
+		}
+		final Section section = getSection(y);
+		if (section == null || section.skyLight == null) {
+			// Above the highest block of the column there is full sky light
+			return y >= getHeight(x, z) ? 15 : 0;
+		}
+		return getNibble(section.skyLight, getIndex(x, y, z));
+	}
+
+	private Section getSection(int y) {
+		final int index = y >> 4;
+		return (index < 0 || index >= this.sections.length) ? null : this.sections[index];
+	}
+
+	private static int getIndex(int x, int y, int z) {
+		return ((y & 0xf) << 8) | ((z & 0xf) << 4) | (x & 0xf);
+	}
+
+	private static int getNibble(byte[] data, int index) {
+		if (data == null) {
+			return 0;
+		}
+		final int value = data[index >> 1];
+		return ((index & 1) == 0) ? (value & 0xf) : ((value >> 4) & 0xf);
+	}
+
+	/**
+	 * Stores a copy of the arrays contained in a single chunk section
+	 */
+	private static class Section {
+		public final byte[] blockIds;
+		public final byte[] extBlockIds;
+		public final byte[] blockData;
+		public final byte[] blockLight;
+		public final byte[] skyLight;
+
+		public Section(Object chunkSection) {
+			this.blockIds = new byte[SECTION_VOLUME];
+			System.arraycopy(ChunkSectionRef.getBlockIds.invoke(chunkSection), 0, this.blockIds, 0, SECTION_VOLUME);
+			this.extBlockIds = copyNibble(ChunkSectionRef.getExtBlockIds.invoke(chunkSection));
+			this.blockData = copyNibble(ChunkSectionRef.getBlockData.invoke(chunkSection));
+			this.blockLight = copyNibble(ChunkSectionRef.getBlockLightNibble.invoke(chunkSection));
+			this.skyLight = copyNibble(ChunkSectionRef.getSkyLightNibble.invoke(chunkSection));
+		}
+
+		private static byte[] copyNibble(Object nibbleArray) {
+			return nibbleArray == null ? null : NibbleArrayRef.getArrayCopy(nibbleArray);
+		}
+	}
+}
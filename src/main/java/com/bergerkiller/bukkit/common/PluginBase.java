@@ -208,7 +208,12 @@ public abstract class PluginBase extends JavaPlugin {
 		if (listener == null) {
 			throw new RuntimeException("Can not load a listener: The listener instance is null");
 		}
-		if (listener != this) {
+		if (listener == this) {
+			return;
+		}
+		if (CommonPlugin.PROFILER.isProfilingEvents()) {
+			CommonPlugin.PROFILER.registerEvents(listener, this);
+		} else {
 			Bukkit.getPluginManager().registerEvents(listener, this);
 		}
 	}
@@ -755,8 +760,8 @@ public abstract class PluginBase extends JavaPlugin {
 				return;
 			}
 
-			// Start Metrics if enabled
-			if (metrics != null) {
+			// Start Metrics if enabled and uploading is allowed by the server owner
+			if (metrics != null && CommonPlugin.getInstance().isRemoteMetricsEnabled()) {
 				metrics.start();
 			}
 
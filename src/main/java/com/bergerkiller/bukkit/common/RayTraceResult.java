@@ -0,0 +1,109 @@
+package com.bergerkiller.bukkit.common;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+
+/**
+ * Stores the outcome of a {@link BlockRayTracer} trace.<br>
+ * A single result can be re-used for many traces, every trace overwrites the previous outcome.
+ */
+public class RayTraceResult {
+	private World world = null;
+	private boolean hit = false;
+	private int x, y, z;
+	private int typeId;
+	private BlockFace face = BlockFace.SELF;
+	private double distance;
+
+	void setHit(World world, int x, int y, int z, int typeId, BlockFace face, double distance) {
+		this.world = world;
+		this.hit = true;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.typeId = typeId;
+		this.face = face;
+		this.distance = distance;
+	}
+
+	void setMiss(World world) {
+		this.world = world;
+		this.hit = false;
+		this.typeId = 0;
+		this.face = BlockFace.SELF;
+	}
+
+	/**
+	 * Gets whether a block was hit
+	 *
+	 * @return True if a block was hit, False if not
+	 */
+	public boolean isHit() {
+		return this.hit;
+	}
+
+	/**
+	 * Gets the x-coordinate of the block that was hit
+	 *
+	 * @return block x
+	 */
+	public int getX() {
+		return this.x;
+	}
+
+	/**
+	 * Gets the y-coordinate of the block that was hit
+	 *
+	 * @return block y
+	 */
+	public int getY() {
+		return this.y;
+	}
+
+	/**
+	 * Gets the z-coordinate of the block that was hit
+	 *
+	 * @return block z
+	 */
+	public int getZ() {
+		return this.z;
+	}
+
+	/**
+	 * Gets the type id of the block that was hit
+	 *
+	 * @return block type id
+	 */
+	public int getTypeId() {
+		return this.typeId;
+	}
+
+	/**
+	 * Gets the face of the block the ray entered through.
+	 * This is {@link BlockFace#SELF} if the ray started inside the block that was hit.
+	 *
+	 * @return hit block face
+	 */
+	public BlockFace getFace() {
+		return this.face;
+	}
+
+	/**
+	 * Gets the distance from the start of the ray to the point where the block was entered
+	 *
+	 * @return hit distance
+	 */
+	public double getDistance() {
+		return this.distance;
+	}
+
+	/**
+	 * Gets the Block that was hit
+	 *
+	 * @return the hit Block, or null if no block was hit
+	 */
+	public Block getBlock() {
+		return this.hit ? this.world.getBlockAt(this.x, this.y, this.z) : null;
+	}
+}
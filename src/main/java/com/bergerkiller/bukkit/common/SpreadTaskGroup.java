@@ -0,0 +1,221 @@
+package com.bergerkiller.bukkit.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+
+/**
+ * A Task that processes every member of a group once every period of ticks, spread out over the ticks
+ * of that period.<br>
+ * Members are divided over as many buckets as there are ticks in the period, and every tick the members
+ * of one bucket are processed. A member stays in the same bucket until it is removed, so it is processed
+ * at a constant interval. New members first take the place of removed members, otherwise they are added
+ * to the buckets in turn, so the buckets stay evenly filled.
+ * Adding and removing members does not depend on the amount of members in the group or the period.<br><br>
+ *
+ * Start the group using {@link #start(long, long) start(1, 1)}, so a bucket is processed every tick.
+ *
+ * @param <T> - member type
+ */
+public abstract class SpreadTaskGroup<T> extends Task {
+	private final List<T>[] buckets;
+	private final Map<T, Slot> slots = new HashMap<T, Slot>();
+	private int currentBucket = 0;
+	private int nextBucket = 0;
+	/**
+	 * Buckets a member was removed from, one entry for every removed member not yet replaced
+	 */
+	private int[] freedBuckets = new int[16];
+	private int freedCount = 0;
+	private List<T> runningBucket = null;
+	private int removedWhileRunning = 0;
+
+	/**
+	 * Initializes a new spread task group
+	 *
+	 * @param plugin owning the task
+	 * @param period in ticks at which every member is processed
+	 */
+	@SuppressWarnings("unchecked")
+	public SpreadTaskGroup(JavaPlugin plugin, int period) {
+		super(plugin);
+		if (period < 1) {
+			throw new IllegalArgumentException("Period must be at least 1 tick");
+		}
+		this.buckets = new List[period];
+		for (int i = 0; i < period; i++) {
+			this.buckets[i] = new ArrayList<T>();
+		}
+	}
+
+	/**
+	 * Processes a single member of this group
+	 *
+	 * @param member to process
+	 */
+	public abstract void process(T member);
+
+	/**
+	 * Gets the period in ticks at which every member is processed
+	 *
+	 * @return period
+	 */
+	public int getPeriod() {
+		return this.buckets.length;
+	}
+
+	/**
+	 * Gets the amount of members in this group
+	 *
+	 * @return member count
+	 */
+	public int size() {
+		return this.slots.size();
+	}
+
+	/**
+	 * Checks whether a member is contained in this group
+	 *
+	 * @param member to check
+	 * @return True if contained, False if not
+	 */
+	public boolean contains(T member) {
+		return this.slots.containsKey(member);
+	}
+
+	/**
+	 * Adds a member to this group
+	 *
+	 * @param member to add
+	 * @return True if added, False if it was already contained
+	 */
+	public boolean add(T member) {
+		if (this.slots.containsKey(member)) {
+			return false;
+		}
+		final int bucket;
+		if (this.freedCount > 0) {
+			bucket = this.freedBuckets[--this.freedCount];
+		} else {
+			bucket = this.nextBucket;
+			if (++this.nextBucket == this.buckets.length) {
+				this.nextBucket = 0;
+			}
+		}
+		this.slots.put(member, new Slot(bucket, this.buckets[bucket].size()));
+		this.buckets[bucket].add(member);
+		return true;
+	}
+
+	/**
+	 * Removes a member from this group
+	 *
+	 * @param member to remove
+	 * @return True if removed, False if it was not contained
+	 */
+	public boolean remove(T member) {
+		final Slot slot = this.slots.remove(member);
+		if (slot == null) {
+			return false;
+		}
+		if (this.freedCount == this.freedBuckets.length) {
+			int[] newFreedBuckets = new int[this.freedBuckets.length << 1];
+			System.arraycopy(this.freedBuckets, 0, newFreedBuckets, 0, this.freedCount);
+			this.freedBuckets = newFreedBuckets;
+		}
+		this.freedBuckets[this.freedCount++] = slot.bucket;
+		final List<T> bucket = this.buckets[slot.bucket];
+		if (bucket == this.runningBucket) {
+			// Moving members around would make the running pass skip or repeat one, clear the spot instead
+			bucket.set(slot.index, null);
+			this.removedWhileRunning++;
+			return true;
+		}
+		// Move the last member of the bucket into the freed spot
+		final T last = bucket.remove(bucket.size() - 1);
+		if (slot.index < bucket.size()) {
+			bucket.set(slot.index, last);
+			this.slots.get(last).index = slot.index;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all members from this group
+	 */
+	public void clear() {
+		this.slots.clear();
+		for (List<T> bucket : this.buckets) {
+			bucket.clear();
+		}
+		this.removedWhileRunning = 0;
+		this.nextBucket = 0;
+		this.freedCount = 0;
+	}
+
+	@Override
+	public void run() {
+		final List<T> bucket = this.buckets[this.currentBucket];
+		if (++this.currentBucket == this.buckets.length) {
+			this.currentBucket = 0;
+		}
+		// Members removed while processing leave an empty spot, members added are not processed until the next pass
+		this.runningBucket = bucket;
+		try {
+			final int end = bucket.size();
+			for (int i = 0; i < end && i < bucket.size(); i++) {
+				final T member = bucket.get(i);
+				if (member == null) {
+					continue;
+				}
+				try {
+					process(member);
+				} catch (Throwable t) {
+					getPlugin().getLogger().log(Level.SEVERE, "An error occurred while processing " + member + ":");
+					CommonUtil.printFilteredStackTrace(t);
+				}
+			}
+		} finally {
+			this.runningBucket = null;
+			if (this.removedWhileRunning > 0) {
+				this.removedWhileRunning = 0;
+				compact(bucket);
+			}
+		}
+	}
+
+	/**
+	 * Removes the empty spots left by members removed while the bucket was processed
+	 *
+	 * @param bucket to compact
+	 */
+	private void compact(List<T> bucket) {
+		// Walk backwards, so the last member moved into an empty spot is never empty itself
+		for (int i = bucket.size() - 1; i >= 0; i--) {
+			if (bucket.get(i) != null) {
+				continue;
+			}
+			final T last = bucket.remove(bucket.size() - 1);
+			if (i < bucket.size()) {
+				bucket.set(i, last);
+				this.slots.get(last).index = i;
+			}
+		}
+	}
+
+	private static class Slot {
+		public final int bucket;
+		public int index;
+
+		public Slot(int bucket, int index) {
+			this.bucket = bucket;
+			this.index = index;
+		}
+	}
+}
@@ -2,7 +2,11 @@ package com.bergerkiller.bukkit.common;
 
 /**
  * A nanosecond stop watch used to measure code execution times
+ * 
+ * @deprecated Only keeps a smoothed duration, use a {@link com.bergerkiller.bukkit.common.metrics.Timer Timer}
+ * obtained from {@link com.bergerkiller.bukkit.common.utils.CommonUtil#getMetricsRegistry()} instead
  */
+@Deprecated
 public class StopWatch {
 	/**
 	 * A global testing StopWatch that can be used when debugging
@@ -0,0 +1,464 @@
+package com.bergerkiller.bukkit.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+import com.bergerkiller.bukkit.common.internal.CommonPlugin;
+import com.bergerkiller.bukkit.common.internal.WorkerPool;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+
+/**
+ * The result of a task that runs on the worker pool or on the main thread, to which
+ * follow-up tasks can be chained. For example, data can be loaded asynchronously, applied
+ * to the world on the main thread, and saved asynchronously again:<br>
+ * <pre>
+ * TaskFuture.supplyAsync(plugin, loadFromDisk).thenApplySync(applyToWorld).thenAcceptAsync(save);
+ * </pre>
+ * Async tasks run on the worker pool of BKCommonLib, and are cancelled if the pool shuts down before they run.
+ * Sync tasks run on the main thread: right away if the previous task completed on the main thread, otherwise the next tick.<br><br>
+ *
+ * When a task fails, all tasks chained to it fail with the same cause without running.
+ * Failures of the last task in a chain are logged, unless they are handled using {@link #onFailureSync(Consumer)}.
+ * Tasks that are due to run after the owning plugin disabled are cancelled instead.
+ *
+ * @param <T> - result type
+ */
+public class TaskFuture<T> implements Future<T> {
+	private static final int PENDING = 0;
+	private static final int COMPLETED = 1;
+	private static final int FAILED = 2;
+	private static final int CANCELLED = 3;
+	private final JavaPlugin plugin;
+	private int state = PENDING;
+	private T value = null;
+	private Throwable error = null;
+	private List<Runnable> listeners = null;
+	private volatile boolean observed = false;
+
+	/**
+	 * Initializes a new pending future. It has to be completed using {@link #complete(Object)}
+	 * or {@link #fail(Throwable)}.
+	 *
+	 * @param plugin owning the future
+	 */
+	public TaskFuture(JavaPlugin plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Creates a future that is already completed
+	 *
+	 * @param plugin owning the future
+	 * @param value of the future
+	 * @return completed future
+	 */
+	public static <T> TaskFuture<T> completed(JavaPlugin plugin, T value) {
+		final TaskFuture<T> future = new TaskFuture<T>(plugin);
+		future.complete(value);
+		return future;
+	}
+
+	/**
+	 * Computes a value on the worker pool
+	 *
+	 * @param plugin owning the task
+	 * @param task to run
+	 * @return future of the computed value
+	 */
+	public static <T> TaskFuture<T> supplyAsync(JavaPlugin plugin, Callable<T> task) {
+		return supply(plugin, task, false);
+	}
+
+	/**
+	 * Computes a value on the main thread
+	 *
+	 * @param plugin owning the task
+	 * @param task to run
+	 * @return future of the computed value
+	 */
+	public static <T> TaskFuture<T> supplySync(JavaPlugin plugin, Callable<T> task) {
+		return supply(plugin, task, true);
+	}
+
+	/**
+	 * Runs a task on the worker pool
+	 *
+	 * @param plugin owning the task
+	 * @param task to run
+	 * @return future that completes once the task ran
+	 */
+	public static TaskFuture<Void> runAsync(JavaPlugin plugin, Runnable task) {
+		return supply(plugin, toCallable(task), false);
+	}
+
+	/**
+	 * Runs a task on the main thread
+	 *
+	 * @param plugin owning the task
+	 * @param task to run
+	 * @return future that completes once the task ran
+	 */
+	public static TaskFuture<Void> runSync(JavaPlugin plugin, Runnable task) {
+		return supply(plugin, toCallable(task), true);
+	}
+
+	private static <T> TaskFuture<T> supply(JavaPlugin plugin, final Callable<T> task, boolean sync) {
+		return completed(plugin, null).then(sync, new Function<Object, T>() {
+			public T apply(Object input) throws Exception {
+				return task.call();
+			}
+		});
+	}
+
+	private static Callable<Void> toCallable(final Runnable task) {
+		return new Callable<Void>() {
+			public Void call() {
+				task.run();
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Gets the plugin owning this future
+	 *
+	 * @return owning plugin
+	 */
+	public JavaPlugin getPlugin() {
+		return this.plugin;
+	}
+
+	/**
+	 * Transforms the value on the worker pool once it is available
+	 *
+	 * @param function to apply
+	 * @return future of the transformed value
+	 */
+	public <R> TaskFuture<R> thenApplyAsync(Function<? super T, R> function) {
+		return then(false, function);
+	}
+
+	/**
+	 * Transforms the value on the main thread once it is available
+	 *
+	 * @param function to apply
+	 * @return future of the transformed value
+	 */
+	public <R> TaskFuture<R> thenApplySync(Function<? super T, R> function) {
+		return then(true, function);
+	}
+
+	/**
+	 * Passes the value to a consumer on the worker pool once it is available
+	 *
+	 * @param consumer to pass the value to
+	 * @return future that completes once the consumer ran
+	 */
+	public TaskFuture<Void> thenAcceptAsync(Consumer<? super T> consumer) {
+		return then(false, toFunction(consumer));
+	}
+
+	/**
+	 * Passes the value to a consumer on the main thread once it is available
+	 *
+	 * @param consumer to pass the value to
+	 * @return future that completes once the consumer ran
+	 */
+	public TaskFuture<Void> thenAcceptSync(Consumer<? super T> consumer) {
+		return then(true, toFunction(consumer));
+	}
+
+	/**
+	 * Runs a task on the worker pool once this future completed
+	 *
+	 * @param task to run
+	 * @return future that completes once the task ran
+	 */
+	public TaskFuture<Void> thenRunAsync(Runnable task) {
+		return then(false, toFunction(task));
+	}
+
+	/**
+	 * Runs a task on the main thread once this future completed
+	 *
+	 * @param task to run
+	 * @return future that completes once the task ran
+	 */
+	public TaskFuture<Void> thenRunSync(Runnable task) {
+		return then(true, toFunction(task));
+	}
+
+	/**
+	 * Passes the cause to a consumer on the main thread if this future fails
+	 *
+	 * @param consumer to pass the cause of the failure to
+	 * @return This future
+	 */
+	public TaskFuture<T> onFailureSync(final Consumer<Throwable> consumer) {
+		addListener(new Runnable() {
+			public void run() {
+				if (state == FAILED) {
+					schedule(true, new Runnable() {
+						public void run() {
+							try {
+								consumer.accept(error);
+							} catch (Throwable t) {
+								CommonUtil.printFilteredStackTrace(t);
+							}
+						}
+					});
+				}
+			}
+		});
+		return this;
+	}
+
+	private static <A> Function<A, Void> toFunction(final Consumer<A> consumer) {
+		return new Function<A, Void>() {
+			public Void apply(A input) throws Exception {
+				consumer.accept(input);
+				return null;
+			}
+		};
+	}
+
+	private static Function<Object, Void> toFunction(final Runnable task) {
+		return new Function<Object, Void>() {
+			public Void apply(Object input) {
+				task.run();
+				return null;
+			}
+		};
+	}
+
+	private <R> TaskFuture<R> then(final boolean sync, final Function<? super T, R> function) {
+		final TaskFuture<R> next = new TaskFuture<R>(this.plugin);
+		addListener(new Runnable() {
+			public void run() {
+				if (state == FAILED) {
+					next.fail(error);
+				} else if (state == CANCELLED) {
+					next.cancel(false);
+				} else {
+					schedule(sync, new WorkerPool.DroppableTask() {
+						public void run() {
+							if (next.isDone()) {
+								return;
+							}
+							if (!plugin.isEnabled()) {
+								next.cancel(false);
+								return;
+							}
+							try {
+								next.complete(function.apply(value));
+							} catch (Throwable t) {
+								next.fail(t);
+							}
+						}
+
+						public void onDropped() {
+							next.cancel(false);
+						}
+					});
+				}
+			}
+		});
+		return next;
+	}
+
+	private void schedule(boolean sync, Runnable task) {
+		if (sync) {
+			if (Thread.currentThread() == CommonUtil.MAIN_THREAD) {
+				task.run();
+			} else {
+				CommonUtil.nextTick(task);
+			}
+		} else {
+			// When the queue of the worker pool is full, a re-used thread of the unbounded pool runs the task
+			final WorkerPool pool = CommonPlugin.hasInstance() ? CommonPlugin.getInstance().getWorkerPool() : null;
+			if (pool == null || (!pool.execute(this.plugin, task) && !pool.executeUnbounded(this.plugin, task))) {
+				// Worker pool is unavailable or shut down: the task will never run
+				if (task instanceof WorkerPool.DroppableTask) {
+					((WorkerPool.DroppableTask) task).onDropped();
+				}
+			}
+		}
+	}
+
+	private void addListener(Runnable listener) {
+		synchronized (this) {
+			this.observed = true;
+			if (this.state == PENDING) {
+				if (this.listeners == null) {
+					this.listeners = new ArrayList<Runnable>(1);
+				}
+				this.listeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	private boolean setResult(int state, T value, Throwable error) {
+		final List<Runnable> listeners;
+		synchronized (this) {
+			if (this.state != PENDING) {
+				return false;
+			}
+			this.state = state;
+			this.value = value;
+			this.error = error;
+			listeners = this.listeners;
+			this.listeners = null;
+			this.notifyAll();
+		}
+		if (listeners == null) {
+			if (state == FAILED) {
+				// Tasks may still be chained to this future after it failed, check again next tick
+				CommonUtil.nextTick(new Runnable() {
+					public void run() {
+						if (!observed) {
+							CommonPlugin.LOGGER.log(Level.SEVERE, "An unhandled error occurred in a task of " + plugin.getName() + ":");
+							CommonUtil.printFilteredStackTrace(TaskFuture.this.error);
+						}
+					}
+				});
+			}
+		} else {
+			for (Runnable listener : listeners) {
+				listener.run();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Completes this future with a value, if it is not yet done
+	 *
+	 * @param value to complete with
+	 * @return True if completed, False if this future was already done
+	 */
+	public boolean complete(T value) {
+		return setResult(COMPLETED, value, null);
+	}
+
+	/**
+	 * Fails this future, if it is not yet done
+	 *
+	 * @param error that caused the failure
+	 * @return True if failed, False if this future was already done
+	 */
+	public boolean fail(Throwable error) {
+		return setResult(FAILED, null, error);
+	}
+
+	/**
+	 * Cancels this future and all tasks chained to it, if it is not yet done.
+	 * A task that is already running is not interrupted.
+	 *
+	 * @param mayInterruptIfRunning (ignored)
+	 * @return True if cancelled, False if this future was already done
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return setResult(CANCELLED, null, null);
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return this.state == CANCELLED;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return this.state != PENDING;
+	}
+
+	/**
+	 * Gets whether this future failed
+	 *
+	 * @return True if failed, False if not
+	 */
+	public synchronized boolean isFailed() {
+		return this.state == FAILED;
+	}
+
+	/**
+	 * Gets the value if this future completed, without waiting
+	 *
+	 * @param def value to return if the future did not complete (yet)
+	 * @return the value, or the default
+	 */
+	public synchronized T getNow(T def) {
+		return this.state == COMPLETED ? this.value : def;
+	}
+
+	/**
+	 * Waits for this future to complete and gets the value.
+	 * This must not be called from the main thread while waiting for a sync task, as it would never complete.
+	 */
+	@Override
+	public synchronized T get() throws InterruptedException, ExecutionException {
+		this.observed = true;
+		while (this.state == PENDING) {
+			this.wait();
+		}
+		return getResult();
+	}
+
+	/**
+	 * Waits for this future to complete and gets the value.
+	 * This must not be called from the main thread while waiting for a sync task, as it would never complete.
+	 */
+	@Override
+	public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		this.observed = true;
+		final long endTime = System.nanoTime() + unit.toNanos(timeout);
+		long remaining;
+		while (this.state == PENDING) {
+			remaining = endTime - System.nanoTime();
+			if (remaining <= 0) {
+				throw new TimeoutException();
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return getResult();
+	}
+
+	private T getResult() throws ExecutionException {
+		if (this.state == FAILED) {
+			throw new ExecutionException(this.error);
+		} else if (this.state == CANCELLED) {
+			throw new CancellationException();
+		}
+		return this.value;
+	}
+
+	/**
+	 * Transforms a value into another
+	 *
+	 * @param <A> - input type
+	 * @param <R> - result type
+	 */
+	public static interface Function<A, R> {
+		public R apply(A input) throws Exception;
+	}
+
+	/**
+	 * Accepts a value
+	 *
+	 * @param <T> - value type
+	 */
+	public static interface Consumer<T> {
+		public void accept(T value) throws Exception;
+	}
+}
@@ -88,6 +88,7 @@ public class ExtendedEntity<T extends org.bukkit.entity.Entity> {
 	 * The internally-stored Bukkit Entity instance
 	 */
 	protected T entity;
+	private DataWatcher metaData = null;
 
 	/**
 	 * Constructs a new Extended Entity with the initial entity specified
@@ -150,7 +151,11 @@ public class ExtendedEntity<T extends org.bukkit.entity.Entity> {
 	 * @return Entity meta data watcher
 	 */
 	public DataWatcher getMetaData() {
-		return new DataWatcher(getHandle(Entity.class).getDataWatcher());
+		final Object handle = getHandle(Entity.class).getDataWatcher();
+		if (this.metaData == null || this.metaData.getHandle() != handle) {
+			this.metaData = new DataWatcher(handle);
+		}
+		return this.metaData;
 	}
 
 	public int getChunkX() {
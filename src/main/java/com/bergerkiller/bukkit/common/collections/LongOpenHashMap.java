@@ -0,0 +1,268 @@
+package com.bergerkiller.bukkit.common.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hash map with primitive long keys using open addressing and linear probing.<br>
+ * Keys and values are stored in flat arrays, no entry objects are created and keys are never boxed.
+ * Null values are not supported.
+ *
+ * @param <V> - value type
+ */
+public class LongOpenHashMap<V> {
+	private static final int MIN_CAPACITY = 8;
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	public LongOpenHashMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Initializes a new map with enough capacity to store the amount of entries specified without resizing
+	 *
+	 * @param expectedSize of the map
+	 */
+	public LongOpenHashMap(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * 3 / 4 < expectedSize) {
+			capacity <<= 1;
+		}
+		this.allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+	}
+
+	private static int hash(long key) {
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private int find(long key) {
+		int slot = hash(key) & this.mask;
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the amount of entries stored
+	 *
+	 * @return entry count
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Checks whether no entries are stored
+	 *
+	 * @return True if empty, False if not
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Checks whether a value is stored for a key
+	 *
+	 * @param key to check
+	 * @return True if contained, False if not
+	 */
+	public boolean containsKey(long key) {
+		return this.find(key) != -1;
+	}
+
+	/**
+	 * Gets the value stored for a key
+	 *
+	 * @param key to get
+	 * @return the value, or null if not contained
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		final int slot = this.find(key);
+		return slot == -1 ? null : (V) this.values[slot];
+	}
+
+	/**
+	 * Stores a value for a key
+	 *
+	 * @param key to put at
+	 * @param value to put (can not be null)
+	 * @return the previous value stored for the key, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not supported");
+		}
+		int slot = hash(key) & this.mask;
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				final V old = (V) this.values[slot];
+				this.values[slot] = value;
+				return old;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		if (++this.size * 4 > this.values.length * 3) {
+			this.rehash(this.values.length << 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the value stored for a key
+	 *
+	 * @param key to remove
+	 * @return the removed value, or null if nothing was removed
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int slot = this.find(key);
+		if (slot == -1) {
+			return null;
+		}
+		final V old = (V) this.values[slot];
+		// Shift following entries back into the gap so probing stays correct
+		int next = (slot + 1) & this.mask;
+		while (this.values[next] != null) {
+			final int ideal = hash(this.keys[next]) & this.mask;
+			if (((next - ideal) & this.mask) >= ((next - slot) & this.mask)) {
+				this.keys[slot] = this.keys[next];
+				this.values[slot] = this.values[next];
+				slot = next;
+			}
+			next = (next + 1) & this.mask;
+		}
+		this.keys[slot] = 0L;
+		this.values[slot] = null;
+		this.size--;
+		return old;
+	}
+
+	/**
+	 * Removes all entries, keeping the allocated capacity
+	 */
+	public void clear() {
+		for (int i = 0; i < this.values.length; i++) {
+			this.values[i] = null;
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Gets all the keys stored
+	 *
+	 * @return new array of keys
+	 */
+	public long[] getKeys() {
+		final long[] result = new long[this.size];
+		int index = 0;
+		for (int i = 0; i < this.values.length; i++) {
+			if (this.values[i] != null) {
+				result[index++] = this.keys[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets all the values stored
+	 *
+	 * @return new list of values
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> getValues() {
+		final List<V> result = new ArrayList<V>(this.size);
+		for (int i = 0; i < this.values.length; i++) {
+			if (this.values[i] != null) {
+				result.add((V) this.values[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a cursor to walk over all entries without creating entry objects.
+	 * The map must not be changed while walking.
+	 *
+	 * @return new cursor
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	private void rehash(int capacity) {
+		final long[] oldKeys = this.keys;
+		final Object[] oldValues = this.values;
+		this.allocate(capacity);
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = hash(oldKeys[i]) & this.mask;
+				while (this.values[slot] != null) {
+					slot = (slot + 1) & this.mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Walks over the entries of the map
+	 */
+	public class Cursor {
+		private int slot = -1;
+		private int remaining = size;
+
+		/**
+		 * Moves to the next entry
+		 *
+		 * @return True if there is a next entry, False if all entries have been walked
+		 */
+		public boolean next() {
+			if (this.remaining == 0) {
+				return false;
+			}
+			do {
+				this.slot++;
+			} while (values[this.slot] == null);
+			this.remaining--;
+			return true;
+		}
+
+		/**
+		 * Gets the key of the current entry
+		 *
+		 * @return key
+		 */
+		public long key() {
+			return keys[this.slot];
+		}
+
+		/**
+		 * Gets the value of the current entry
+		 *
+		 * @return value
+		 */
+		@SuppressWarnings("unchecked")
+		public V value() {
+			return (V) values[this.slot];
+		}
+	}
+}
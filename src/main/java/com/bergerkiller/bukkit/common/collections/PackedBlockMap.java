@@ -0,0 +1,274 @@
+package com.bergerkiller.bukkit.common.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+
+/**
+ * Maps block coordinates to values, without creating key objects.<br>
+ * Values are stored per World name, then per chunk, keyed by the coordinates packed into a single long
+ * (see {@link MathUtil#toBlockKey(int, int, int)}). Looking up a value does not allocate any memory,
+ * and all values within a chunk can be obtained without walking all the entries.
+ * Null values are not supported.
+ *
+ * @param <V> - value type
+ */
+public class PackedBlockMap<V> {
+	private final Map<String, LongOpenHashMap<LongOpenHashMap<V>>> worlds = new HashMap<String, LongOpenHashMap<LongOpenHashMap<V>>>();
+	private String lastWorldName = null;
+	private LongOpenHashMap<LongOpenHashMap<V>> lastWorld = null;
+	private int size = 0;
+
+	private LongOpenHashMap<LongOpenHashMap<V>> getWorld(String worldName, boolean create) {
+		if (worldName == this.lastWorldName) {
+			return this.lastWorld;
+		}
+		LongOpenHashMap<LongOpenHashMap<V>> world = this.worlds.get(worldName);
+		if (world == null) {
+			if (!create) {
+				return null;
+			}
+			world = new LongOpenHashMap<LongOpenHashMap<V>>();
+			this.worlds.put(worldName, world);
+		}
+		this.lastWorldName = worldName;
+		this.lastWorld = world;
+		return world;
+	}
+
+	/**
+	 * Gets the amount of values stored
+	 *
+	 * @return value count
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Checks whether no values are stored
+	 *
+	 * @return True if empty, False if not
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Gets the names of all the Worlds that contain values
+	 *
+	 * @return World names
+	 */
+	public Set<String> getWorldNames() {
+		return Collections.unmodifiableSet(this.worlds.keySet());
+	}
+
+	public boolean containsKey(Block block) {
+		return this.get(block) != null;
+	}
+
+	public boolean containsKey(World world, IntVector3 coord) {
+		return this.get(world.getName(), coord.x, coord.y, coord.z) != null;
+	}
+
+	public boolean containsKey(World world, int x, int y, int z) {
+		return this.get(world.getName(), x, y, z) != null;
+	}
+
+	public boolean containsKey(String world, int x, int y, int z) {
+		return this.get(world, x, y, z) != null;
+	}
+
+	public V get(Block block) {
+		return this.get(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+	}
+
+	public V get(World world, IntVector3 coord) {
+		return this.get(world.getName(), coord.x, coord.y, coord.z);
+	}
+
+	public V get(World world, int x, int y, int z) {
+		return this.get(world.getName(), x, y, z);
+	}
+
+	/**
+	 * Gets the value stored at the block coordinates specified
+	 *
+	 * @param world name
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @return the value, or null if none is stored
+	 */
+	public V get(String world, int x, int y, int z) {
+		final LongOpenHashMap<LongOpenHashMap<V>> chunks = this.getWorld(world, false);
+		if (chunks == null) {
+			return null;
+		}
+		final LongOpenHashMap<V> blocks = chunks.get(MathUtil.longHashToLong(x >> 4, z >> 4));
+		return blocks == null ? null : blocks.get(MathUtil.toBlockKey(x, y, z));
+	}
+
+	public V put(Block block, V value) {
+		return this.put(block.getWorld().getName(), block.getX(), block.getY(), block.getZ(), value);
+	}
+
+	public V put(World world, IntVector3 coord, V value) {
+		return this.put(world.getName(), coord.x, coord.y, coord.z, value);
+	}
+
+	public V put(World world, int x, int y, int z, V value) {
+		return this.put(world.getName(), x, y, z, value);
+	}
+
+	/**
+	 * Stores a value at the block coordinates specified
+	 *
+	 * @param world name
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @param value to store (can not be null)
+	 * @return the previous value stored, or null if there was none
+	 */
+	public V put(String world, int x, int y, int z, V value) {
+		final LongOpenHashMap<LongOpenHashMap<V>> chunks = this.getWorld(world, true);
+		final long chunkKey = MathUtil.longHashToLong(x >> 4, z >> 4);
+		LongOpenHashMap<V> blocks = chunks.get(chunkKey);
+		if (blocks == null) {
+			blocks = new LongOpenHashMap<V>();
+			chunks.put(chunkKey, blocks);
+		}
+		final V old = blocks.put(MathUtil.toBlockKey(x, y, z), value);
+		if (old == null) {
+			this.size++;
+		}
+		return old;
+	}
+
+	public V remove(Block block) {
+		return this.remove(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+	}
+
+	public V remove(World world, IntVector3 coord) {
+		return this.remove(world.getName(), coord.x, coord.y, coord.z);
+	}
+
+	public V remove(World world, int x, int y, int z) {
+		return this.remove(world.getName(), x, y, z);
+	}
+
+	/**
+	 * Removes the value stored at the block coordinates specified
+	 *
+	 * @param world name
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @return the removed value, or null if nothing was removed
+	 */
+	public V remove(String world, int x, int y, int z) {
+		final LongOpenHashMap<LongOpenHashMap<V>> chunks = this.getWorld(world, false);
+		if (chunks == null) {
+			return null;
+		}
+		final long chunkKey = MathUtil.longHashToLong(x >> 4, z >> 4);
+		final LongOpenHashMap<V> blocks = chunks.get(chunkKey);
+		if (blocks == null) {
+			return null;
+		}
+		final V old = blocks.remove(MathUtil.toBlockKey(x, y, z));
+		if (old != null) {
+			this.size--;
+			if (blocks.isEmpty()) {
+				chunks.remove(chunkKey);
+			}
+		}
+		return old;
+	}
+
+	/**
+	 * Removes all values
+	 */
+	public void clear() {
+		this.worlds.clear();
+		this.lastWorldName = null;
+		this.lastWorld = null;
+		this.size = 0;
+	}
+
+	/**
+	 * Removes all values stored in a World
+	 *
+	 * @param world name
+	 */
+	public void clear(String world) {
+		final LongOpenHashMap<LongOpenHashMap<V>> chunks = this.worlds.remove(world);
+		if (chunks == null) {
+			return;
+		}
+		if (chunks == this.lastWorld) {
+			this.lastWorldName = null;
+			this.lastWorld = null;
+		}
+		final LongOpenHashMap<LongOpenHashMap<V>>.Cursor cursor = chunks.cursor();
+		while (cursor.next()) {
+			this.size -= cursor.value().size();
+		}
+	}
+
+	/**
+	 * Gets the values stored in a single chunk, keyed by the packed block coordinates.
+	 * The coordinates can be unpacked using {@link MathUtil#blockKeyX(long)}, {@link MathUtil#blockKeyY(long)}
+	 * and {@link MathUtil#blockKeyZ(long)}. The returned map must not be changed.
+	 *
+	 * @param world name
+	 * @param chunkX - coordinate of the chunk
+	 * @param chunkZ - coordinate of the chunk
+	 * @return chunk values, or null if none are stored in the chunk
+	 */
+	public LongOpenHashMap<V> getChunk(String world, int chunkX, int chunkZ) {
+		final LongOpenHashMap<LongOpenHashMap<V>> chunks = this.getWorld(world, false);
+		return chunks == null ? null : chunks.get(MathUtil.longHashToLong(chunkX, chunkZ));
+	}
+
+	/**
+	 * Gets all the values stored within a range of chunks
+	 *
+	 * @param world name
+	 * @param minChunkX - coordinate of the chunk range (inclusive)
+	 * @param minChunkZ - coordinate of the chunk range (inclusive)
+	 * @param maxChunkX - coordinate of the chunk range (inclusive)
+	 * @param maxChunkZ - coordinate of the chunk range (inclusive)
+	 * @return new list of values
+	 */
+	public List<V> getValues(String world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+		final List<V> values = new ArrayList<V>();
+		final LongOpenHashMap<LongOpenHashMap<V>> chunks = this.getWorld(world, false);
+		if (chunks == null) {
+			return values;
+		}
+		LongOpenHashMap<V> blocks;
+		for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+			for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+				blocks = chunks.get(MathUtil.longHashToLong(cx, cz));
+				if (blocks != null) {
+					final LongOpenHashMap<V>.Cursor cursor = blocks.cursor();
+					while (cursor.next()) {
+						values.add(cursor.value());
+					}
+				}
+			}
+		}
+		return values;
+	}
+}
@@ -0,0 +1,142 @@
+package com.bergerkiller.bukkit.common.collections;
+
+import java.util.Set;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+
+/**
+ * Stores block coordinates, without creating key objects.<br>
+ * Coordinates are stored per World name, then per chunk, packed into a single long
+ * (see {@link MathUtil#toBlockKey(int, int, int)}). Checking whether a block is contained does not allocate any memory.
+ */
+public class PackedBlockSet {
+	private final PackedBlockMap<Boolean> map = new PackedBlockMap<Boolean>();
+
+	/**
+	 * Gets the amount of blocks stored
+	 *
+	 * @return block count
+	 */
+	public int size() {
+		return this.map.size();
+	}
+
+	/**
+	 * Checks whether no blocks are stored
+	 *
+	 * @return True if empty, False if not
+	 */
+	public boolean isEmpty() {
+		return this.map.isEmpty();
+	}
+
+	/**
+	 * Gets the names of all the Worlds that contain blocks
+	 *
+	 * @return World names
+	 */
+	public Set<String> getWorldNames() {
+		return this.map.getWorldNames();
+	}
+
+	public boolean contains(Block block) {
+		return this.map.containsKey(block);
+	}
+
+	public boolean contains(World world, IntVector3 coord) {
+		return this.map.containsKey(world, coord);
+	}
+
+	public boolean contains(World world, int x, int y, int z) {
+		return this.map.containsKey(world, x, y, z);
+	}
+
+	public boolean contains(String world, int x, int y, int z) {
+		return this.map.containsKey(world, x, y, z);
+	}
+
+	public boolean add(Block block) {
+		return this.map.put(block, Boolean.TRUE) == null;
+	}
+
+	public boolean add(World world, IntVector3 coord) {
+		return this.map.put(world, coord, Boolean.TRUE) == null;
+	}
+
+	public boolean add(World world, int x, int y, int z) {
+		return this.map.put(world, x, y, z, Boolean.TRUE) == null;
+	}
+
+	/**
+	 * Adds the block coordinates specified
+	 *
+	 * @param world name
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @return True if the block was added, False if it was already contained
+	 */
+	public boolean add(String world, int x, int y, int z) {
+		return this.map.put(world, x, y, z, Boolean.TRUE) == null;
+	}
+
+	public boolean remove(Block block) {
+		return this.map.remove(block) != null;
+	}
+
+	public boolean remove(World world, IntVector3 coord) {
+		return this.map.remove(world, coord) != null;
+	}
+
+	public boolean remove(World world, int x, int y, int z) {
+		return this.map.remove(world, x, y, z) != null;
+	}
+
+	/**
+	 * Removes the block coordinates specified
+	 *
+	 * @param world name
+	 * @param x - coordinate of the block
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block
+	 * @return True if the block was removed, False if it was not contained
+	 */
+	public boolean remove(String world, int x, int y, int z) {
+		return this.map.remove(world, x, y, z) != null;
+	}
+
+	/**
+	 * Removes all blocks
+	 */
+	public void clear() {
+		this.map.clear();
+	}
+
+	/**
+	 * Removes all blocks stored in a World
+	 *
+	 * @param world name
+	 */
+	public void clear(String world) {
+		this.map.clear(world);
+	}
+
+	/**
+	 * Gets the packed coordinates of all blocks stored in a single chunk.
+	 * The coordinates can be unpacked using {@link MathUtil#blockKeyX(long)}, {@link MathUtil#blockKeyY(long)}
+	 * and {@link MathUtil#blockKeyZ(long)}.
+	 *
+	 * @param world name
+	 * @param chunkX - coordinate of the chunk
+	 * @param chunkZ - coordinate of the chunk
+	 * @return new array of packed block coordinates
+	 */
+	public long[] getChunkBlocks(String world, int chunkX, int chunkZ) {
+		final LongOpenHashMap<Boolean> blocks = this.map.getChunk(world, chunkX, chunkZ);
+		return blocks == null ? new long[0] : blocks.getKeys();
+	}
+}
@@ -2,6 +2,7 @@ package com.bergerkiller.bukkit.common.controller;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 
 import org.bukkit.World;
 import org.bukkit.entity.HumanEntity;
@@ -17,9 +18,11 @@ import com.bergerkiller.bukkit.common.bases.IntVector3;
 import com.bergerkiller.bukkit.common.bases.mutable.IntLocationAbstract;
 import com.bergerkiller.bukkit.common.bases.mutable.IntegerAbstract;
 import com.bergerkiller.bukkit.common.bases.mutable.VectorAbstract;
+import com.bergerkiller.bukkit.common.collections.EntityMap;
 import com.bergerkiller.bukkit.common.conversion.Conversion;
 import com.bergerkiller.bukkit.common.entity.CommonEntity;
 import com.bergerkiller.bukkit.common.entity.CommonEntityController;
+import com.bergerkiller.bukkit.common.entity.CommonEntityType;
 import com.bergerkiller.bukkit.common.entity.nms.NMSEntityTrackerEntry;
 import com.bergerkiller.bukkit.common.internal.CommonNMS;
 import com.bergerkiller.bukkit.common.protocol.CommonPacket;
@@ -59,8 +62,20 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 	 * The tick interval at which the entity is updated absolutely
 	 */
 	public static final int ABSOLUTE_UPDATE_INTERVAL = 400;
+	/**
+	 * The amount of pending outbound bytes above which a viewer connection is considered congested
+	 */
+	public static final long CONGESTED_PENDING_BYTES = 32768;
+	/**
+	 * The tick interval at which viewers with a congested connection receive absolute movement updates
+	 */
+	public static final int CONGESTED_UPDATE_INTERVAL = 20;
 
 	private Object handle;
+	private NetworkLevelOfDetail levelOfDetail = null;
+	private final Map<Player, ViewerState> viewerStates = new EntityMap<Player, ViewerState>();
+	private boolean hasReducedViewers = false;
+	private CommonPacket metaSnapshot = null;
 
 	/**
 	 * Obtains the velocity as the clients know it, allowing it to be read from or written to
@@ -156,6 +171,7 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 		}
 		this.entity = entity;
 		this.handle = entityTrackerEntry;
+		this.metaSnapshot = null;
 		if (this.handle instanceof NMSEntityTrackerEntry) {
 			((NMSEntityTrackerEntry) this.handle).setController(this);
 		}
@@ -211,6 +227,7 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 		if (!((EntityTrackerEntry) handle).trackedPlayers.remove(Conversion.toEntityHandle.convert(viewer))) {
 			return false;
 		}
+		this.viewerStates.remove(viewer);
 		this.makeHidden(viewer);
 		return true;
 	}
@@ -242,12 +259,13 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 	 */
 	public void makeVisible(Player viewer) {
 		CommonNMS.getNative(viewer).removeQueue.remove((Object) entity.getEntityId());
+		this.viewerStates.remove(viewer);
 
 		// Spawn packet
 		PacketUtil.sendPacket(viewer, getSpawnPacket());
 
 		// Meta Data
-		PacketUtil.sendPacket(viewer, PacketFields.ENTITY_METADATA.newInstance(entity.getEntityId(), entity.getMetaData(), true));
+		PacketUtil.sendPacket(viewer, getMetaSnapshotPacket());
 
 		// Velocity
 		PacketUtil.sendPacket(viewer, PacketFields.ENTITY_VELOCITY.newInstance(entity.getEntityId(), this.getProtocolVelocitySynched()));
@@ -367,6 +385,7 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 		}
 		this.syncMeta();
 		this.syncHeadRotation();
+		this.syncLocationReduced();
 	}
 
 	/**
@@ -399,6 +418,41 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 		syncLocation(moved, rotated);
 	}
 
+	/**
+	 * Synchronizes the entity position / rotation absolutely to the viewers that no longer receive all
+	 * relative movement updates because of the level of detail, once their update interval is reached.
+	 * This is called from {@link #onSync()}; if onSync is overridden without calling the super method,
+	 * this method should be called at the end of the synchronization.
+	 */
+	public void syncLocationReduced() {
+		if (!this.hasReducedViewers) {
+			return;
+		}
+		final NetworkLevelOfDetail levelOfDetail = this.getLevelOfDetail();
+		final int tick = this.getTick();
+		boolean remaining = false;
+		CommonPacket packet = null;
+		for (Player viewer : getViewers()) {
+			final ViewerState state = this.viewerStates.get(viewer);
+			if (state == null || !state.outOfSync) {
+				continue;
+			}
+			final int interval = this.getViewerUpdateInterval(viewer, levelOfDetail);
+			if (interval > 1 && (tick - state.lastSync) < interval) {
+				remaining = true;
+				continue;
+			}
+			if (packet == null) {
+				packet = PacketFields.ENTITY_TELEPORT.newInstance(entity.getEntityId(), locSynched.getX(), locSynched.getY(), 
+						locSynched.getZ(), (byte) locSynched.getYaw(), (byte) locSynched.getPitch());
+			}
+			PacketUtil.sendPacket(viewer, packet);
+			state.outOfSync = false;
+			state.lastSync = tick;
+		}
+		this.hasReducedViewers = remaining;
+	}
+
 	/**
 	 * Synchronizes the entity head yaw rotation to all Clients.
 	 */
@@ -417,8 +471,23 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 	public void syncMeta() {
 		DataWatcher meta = entity.getMetaData();
 		if (meta.isChanged()) {
+			// Only the changed entries are sent, and the change flags are reset
 			broadcast(PacketFields.ENTITY_METADATA.newInstance(entity.getEntityId(), meta, false), true);
+			this.metaSnapshot = null;
+		}
+	}
+
+	/**
+	 * Obtains a metadata packet containing all the metadata of this Entity, used to spawn the Entity for new viewers.
+	 * The packet is created once and re-used for all viewers until the metadata changes.
+	 * 
+	 * @return full metadata packet
+	 */
+	public CommonPacket getMetaSnapshotPacket() {
+		if (this.metaSnapshot == null) {
+			this.metaSnapshot = PacketFields.ENTITY_METADATA.newInstance(entity.getEntityId(), entity.getMetaData(), true);
 		}
+		return this.metaSnapshot;
 	}
 
 	/**
@@ -459,6 +528,87 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 		}
 	}
 
+	/**
+	 * Sends a relative movement packet to all viewers that receive all movement updates.
+	 * Viewers that receive less movement updates because of the level of detail
+	 * are updated absolutely later on, in {@link #syncLocationReduced()}.
+	 * 
+	 * @param packet containing the relative movement to send
+	 */
+	public void broadcastMovement(CommonPacket packet) {
+		final NetworkLevelOfDetail levelOfDetail = this.getLevelOfDetail();
+		if (levelOfDetail == NetworkLevelOfDetail.FULL && !this.hasReducedViewers && 
+				PacketUtil.getMaxPendingBytesSampled() < CONGESTED_PENDING_BYTES) {
+			broadcast(packet);
+			return;
+		}
+		final int tick = this.getTick();
+		for (Player viewer : this.getViewers()) {
+			ViewerState state = this.viewerStates.get(viewer);
+			if (state != null && state.outOfSync) {
+				// Viewer has missed relative movement - can only be corrected absolutely
+				continue;
+			}
+			if (this.getViewerUpdateInterval(viewer, levelOfDetail) <= 1) {
+				PacketUtil.sendPacket(viewer, packet);
+				continue;
+			}
+			if (state == null) {
+				state = new ViewerState();
+				state.lastSync = tick;
+				this.viewerStates.put(viewer, state);
+			}
+			state.outOfSync = true;
+			this.hasReducedViewers = true;
+		}
+	}
+
+	/**
+	 * Gets the level of detail used to synchronize movement of this Entity to the viewers.
+	 * If none is set for this controller, the level of detail of the Entity type is returned.
+	 * 
+	 * @return network level of detail
+	 */
+	public NetworkLevelOfDetail getLevelOfDetail() {
+		if (this.levelOfDetail == null) {
+			return CommonEntityType.byNMSEntity(entity.getHandle()).getNetworkLevelOfDetail();
+		}
+		return this.levelOfDetail;
+	}
+
+	/**
+	 * Sets the level of detail used to synchronize movement of this Entity to the viewers
+	 * 
+	 * @param levelOfDetail to set to, null to use the level of detail of the Entity type
+	 */
+	public void setLevelOfDetail(NetworkLevelOfDetail levelOfDetail) {
+		this.levelOfDetail = levelOfDetail;
+	}
+
+	/**
+	 * Gets the tick interval at which movement of this Entity is synchronized to a viewer.
+	 * An interval of 1 means that the viewer receives all relative movement updates.
+	 * Viewers with a congested connection receive movement updates at a reduced interval,
+	 * until the pending outbound packets have been sent.
+	 * Override this method to change the level of detail on a per-viewer basis.
+	 * 
+	 * @param viewer to get the update interval of
+	 * @param levelOfDetail of this Entity
+	 * @return movement update interval in ticks
+	 */
+	public int getViewerUpdateInterval(Player viewer, NetworkLevelOfDetail levelOfDetail) {
+		int interval = 1;
+		if (levelOfDetail != NetworkLevelOfDetail.FULL) {
+			final double dx = Math.abs(EntityUtil.getLocX(viewer) - (double) locSynched.getX() / 32.0);
+			final double dz = Math.abs(EntityUtil.getLocZ(viewer) - (double) locSynched.getZ() / 32.0);
+			interval = levelOfDetail.getInterval(Math.max(dx, dz));
+		}
+		if (PacketUtil.getPendingBytesSampled(viewer) >= CONGESTED_PENDING_BYTES) {
+			interval = Math.max(interval, CONGESTED_UPDATE_INTERVAL);
+		}
+		return interval;
+	}
+
 	/**
 	 * Creates a new spawn packet for spawning this Entity.
 	 * To change the spawned entity type, override this method.
@@ -580,6 +730,10 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 		// Update last synchronization time
 		EntityTrackerEntryRef.timeSinceLocationSync.set(handle, 0);
 
+		// All viewers receive this update, so all are in sync again
+		this.viewerStates.clear();
+		this.hasReducedViewers = false;
+
 		// Send synchronization messages
 		broadcast(PacketFields.ENTITY_TELEPORT.newInstance(entity.getEntityId(), posX, posY, posZ, (byte) yaw, (byte) pitch));
 	}
@@ -654,12 +808,12 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 			} else if (rotation) {
 				// Update rotation and position relatively
 				locSynched.set(posX, posY, posZ, yaw, pitch);
-				broadcast(PacketFields.REL_ENTITY_MOVE_LOOK.newInstance(entity.getEntityId(), 
+				broadcastMovement(PacketFields.REL_ENTITY_MOVE_LOOK.newInstance(entity.getEntityId(), 
 						(byte) deltaX, (byte) deltaY, (byte) deltaZ, (byte) yaw, (byte) pitch));
 			} else {
 				// Only update position relatively
 				locSynched.set(posX, posY, posZ);
-				broadcast(PacketFields.REL_ENTITY_MOVE.newInstance(entity.getEntityId(), 
+				broadcastMovement(PacketFields.REL_ENTITY_MOVE.newInstance(entity.getEntityId(), 
 						(byte) deltaX, (byte) deltaY, (byte) deltaZ));
 			}
 		} else if (rotation) {
@@ -845,4 +999,9 @@ public abstract class EntityNetworkController<T extends CommonEntity<?>> extends
 	private int protLoc(double loc) {
 		return ((EntityTrackerEntry) handle).tracker.at.a(loc);
 	}
+
+	private static class ViewerState {
+		public boolean outOfSync = false;
+		public int lastSync;
+	}
 }
@@ -0,0 +1,64 @@
+package com.bergerkiller.bukkit.common.controller;
+
+/**
+ * Describes how often Entity movement is synchronized to viewers, based on the distance between the viewer and the Entity.
+ * Viewers within the near distance receive every (relative) movement update.
+ * Viewers further away no longer receive relative movement updates, and instead
+ * receive an absolute (teleport) update once every mid- or far-range tick interval.
+ */
+public class NetworkLevelOfDetail {
+	/**
+	 * Level of detail in which all viewers receive all movement updates
+	 */
+	public static final NetworkLevelOfDetail FULL = new NetworkLevelOfDetail(Integer.MAX_VALUE, Integer.MAX_VALUE, 1, 1);
+	/**
+	 * Suggested level of detail for Entities that have a lot of viewers
+	 */
+	public static final NetworkLevelOfDetail DEFAULT = new NetworkLevelOfDetail(32, 64, 5, 20);
+	/**
+	 * The block distance up to which viewers receive all movement updates
+	 */
+	public final int nearDistance;
+	/**
+	 * The block distance up to which viewers are considered mid-range
+	 */
+	public final int midDistance;
+	/**
+	 * The tick interval at which mid-range viewers receive an absolute movement update
+	 */
+	public final int midInterval;
+	/**
+	 * The tick interval at which far-range viewers receive an absolute movement update
+	 */
+	public final int farInterval;
+
+	public NetworkLevelOfDetail(int nearDistance, int midDistance, int midInterval, int farInterval) {
+		if (midDistance < nearDistance) {
+			throw new IllegalArgumentException("Mid-range distance can not be smaller than the near distance");
+		}
+		if (midInterval < 1 || farInterval < 1) {
+			throw new IllegalArgumentException("Update intervals must be at least 1 tick");
+		}
+		this.nearDistance = nearDistance;
+		this.midDistance = midDistance;
+		this.midInterval = midInterval;
+		this.farInterval = farInterval;
+	}
+
+	/**
+	 * Gets the tick interval at which movement is synchronized to a viewer at a certain distance.
+	 * An interval of 1 means that all (relative) movement updates are sent.
+	 *
+	 * @param distance in blocks between the viewer and the Entity
+	 * @return movement update interval in ticks
+	 */
+	public int getInterval(double distance) {
+		if (distance <= nearDistance) {
+			return 1;
+		} else if (distance <= midDistance) {
+			return midInterval;
+		} else {
+			return farInterval;
+		}
+	}
+}
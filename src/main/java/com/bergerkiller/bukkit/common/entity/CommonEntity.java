@@ -22,6 +22,7 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
 
 import com.bergerkiller.bukkit.common.bases.ExtendedEntity;
+import com.bergerkiller.bukkit.common.collections.EntityMap;
 import com.bergerkiller.bukkit.common.controller.DefaultEntityController;
 import com.bergerkiller.bukkit.common.controller.DefaultEntityNetworkController;
 import com.bergerkiller.bukkit.common.controller.EntityController;
@@ -565,6 +566,7 @@ public class CommonEntity<T extends org.bukkit.entity.Entity> extends ExtendedEn
 
 	/**
 	 * Obtains a (new) {@link CommonEntity} instance providing additional methods for the Entity specified.
+	 * The same instance is returned for the same Entity for as long as the Entity stays on the server.
 	 * This method never returns null, unless the input Entity is null.
 	 * 
 	 * @param entity to get a CommonEntity for
@@ -585,7 +587,20 @@ public class CommonEntity<T extends org.bukkit.entity.Entity> extends ExtendedEn
 				return (CommonEntity<T>) controller.getEntity();
 			}
 		}
-		return CommonEntityType.byNMSEntity(handle).createCommonEntity(entity);
+		// Re-use a previously created wrapper for this Entity, if possible
+		final EntityMap<org.bukkit.entity.Entity, CommonEntity<?>> wrappers;
+		wrappers = CommonPlugin.hasInstance() ? CommonPlugin.getInstance().getEntityWrappers() : null;
+		if (wrappers == null) {
+			return CommonEntityType.byNMSEntity(handle).createCommonEntity(entity);
+		}
+		synchronized (wrappers) {
+			CommonEntity<?> wrapper = wrappers.get(entity);
+			if (wrapper == null || wrapper.entity != entity) {
+				wrapper = CommonEntityType.byNMSEntity(handle).createCommonEntity(entity);
+				wrappers.put(entity, wrapper);
+			}
+			return (CommonEntity<T>) wrapper;
+		}
 	}
 
 	/**
@@ -12,6 +12,7 @@ import org.bukkit.entity.LivingEntity;
 
 import com.bergerkiller.bukkit.common.Common;
 import com.bergerkiller.bukkit.common.collections.ClassMap;
+import com.bergerkiller.bukkit.common.controller.NetworkLevelOfDetail;
 import com.bergerkiller.bukkit.common.conversion.Conversion;
 import com.bergerkiller.bukkit.common.entity.nms.NMSEntityClassBuilder;
 import com.bergerkiller.bukkit.common.entity.nms.NMSEntityHook;
@@ -44,6 +45,7 @@ public class CommonEntityType {
 	public final int networkUpdateInterval;
 	public final int networkViewDistance;
 	public final boolean networkIsMobile;
+	private NetworkLevelOfDetail networkLevelOfDetail = NetworkLevelOfDetail.FULL;
 
 	public CommonEntityType(EntityType entityType, String nmsName, int networkViewDistance, int networkUpdateInterval, boolean networkIsMobile) {
 		// Properties first
@@ -97,6 +99,25 @@ public class CommonEntityType {
 		}
 	}
 
+	/**
+	 * Gets the level of detail used by Entity Network Controllers to synchronize movement of this type of Entity.
+	 * Network Controllers can override the level of detail for a single Entity.
+	 * 
+	 * @return network level of detail
+	 */
+	public NetworkLevelOfDetail getNetworkLevelOfDetail() {
+		return networkLevelOfDetail;
+	}
+
+	/**
+	 * Sets the level of detail used by Entity Network Controllers to synchronize movement of this type of Entity
+	 * 
+	 * @param levelOfDetail to set to, null to synchronize all movement to all viewers
+	 */
+	public void setNetworkLevelOfDetail(NetworkLevelOfDetail levelOfDetail) {
+		this.networkLevelOfDetail = LogicUtil.fixNull(levelOfDetail, NetworkLevelOfDetail.FULL);
+	}
+
 	public boolean hasNMSEntity() {
 		return nmsConstructor != null;
 	}
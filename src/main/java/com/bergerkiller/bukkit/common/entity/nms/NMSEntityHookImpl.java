@@ -9,6 +9,7 @@ import com.bergerkiller.bukkit.common.controller.DefaultEntityController;
 import com.bergerkiller.bukkit.common.controller.EntityController;
 import com.bergerkiller.bukkit.common.entity.CommonEntity;
 import com.bergerkiller.bukkit.common.internal.CommonNMS;
+import com.bergerkiller.bukkit.common.internal.CommonPlugin;
 import com.bergerkiller.bukkit.common.reflection.classes.EntityTypesRef;
 
 public class NMSEntityHookImpl implements NMSEntityHook {
@@ -36,7 +37,14 @@ public class NMSEntityHookImpl implements NMSEntityHook {
 
 	@Override
 	public void l_() {
-		controller.onTick();
+		if (CommonPlugin.TIMINGS.isActive()) {
+			final EntityController<?> controller = this.controller;
+			final long startTime = System.nanoTime();
+			controller.onTick();
+			CommonPlugin.TIMINGS.onControllerTick(controller, System.nanoTime() - startTime);
+		} else {
+			controller.onTick();
+		}
 	}
 
 	@Override
@@ -52,7 +60,14 @@ public class NMSEntityHookImpl implements NMSEntityHook {
 
 	@Override
 	public void move(double dx, double dy, double dz) {
-		controller.onMove(dx, dy, dz);
+		if (CommonPlugin.TIMINGS.isActive()) {
+			final EntityController<?> controller = this.controller;
+			final long startTime = System.nanoTime();
+			controller.onMove(dx, dy, dz);
+			CommonPlugin.TIMINGS.onControllerMove(controller, System.nanoTime() - startTime);
+		} else {
+			controller.onMove(dx, dy, dz);
+		}
 	}
 
 	@Override
@@ -49,7 +49,14 @@ public class NMSEntityTrackerEntry extends EntityTrackerEntry {
 		updateTrackers(list);
 		EntityTrackerEntryRef.timeSinceLocationSync.set(this, EntityTrackerEntryRef.timeSinceLocationSync.get(this) + 1);
 		try {
-			controller.onSync();
+			if (CommonPlugin.TIMINGS.isActive()) {
+				final EntityNetworkController<?> controller = this.controller;
+				final long startTime = System.nanoTime();
+				controller.onSync();
+				CommonPlugin.TIMINGS.onNetworkControllerSync(controller, System.nanoTime() - startTime);
+			} else {
+				controller.onSync();
+			}
 		} catch (Throwable t) {
 			CommonPlugin.LOGGER_NETWORK.log(Level.SEVERE, "Failed to synchronize:");
 			t.printStackTrace();
@@ -0,0 +1,247 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import com.bergerkiller.bukkit.common.BudgetedTask;
+import com.bergerkiller.bukkit.common.Task;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+
+/**
+ * Runs the steps of all started {@link BudgetedTask BudgetedTasks} every tick, until a time budget is used up.<br>
+ * The budget is divided equally between the plugins that have tasks to run. Time a plugin does not use
+ * is handed to the plugins after it, and the plugin that goes first changes every tick.
+ * When the previous tick took longer than it should, the budget of the current tick is lowered by that amount.
+ */
+public class BudgetedTaskScheduler extends Task {
+	private static final long TICK_TIME = 50000000L;
+	private final Map<BudgetedTask, Entry> entries = new HashMap<BudgetedTask, Entry>();
+	private final Map<Plugin, PluginQueue> queues = new HashMap<Plugin, PluginQueue>();
+	private final List<PluginQueue> activeQueues = new ArrayList<PluginQueue>();
+	private long maxTime = 10000000L;
+	private long minTime = 1000000L;
+	private long lastRunTime = 0;
+	private long lastBudget = 0;
+	private long lastUsedTime = 0;
+	private int rotation = 0;
+
+	public BudgetedTaskScheduler(JavaPlugin plugin) {
+		super(plugin);
+	}
+
+	/**
+	 * Sets the maximum time that can be spent running budgeted tasks every tick
+	 *
+	 * @param milliseconds to set to
+	 */
+	public void setMaxTime(double milliseconds) {
+		this.maxTime = (long) (Math.max(0.0, milliseconds) * 1E6);
+	}
+
+	/**
+	 * Sets the time that can always be spent running budgeted tasks every tick, even while the server is lagging
+	 *
+	 * @param milliseconds to set to
+	 */
+	public void setMinTime(double milliseconds) {
+		this.minTime = (long) (Math.max(0.0, milliseconds) * 1E6);
+	}
+
+	/**
+	 * Gets the amount of budgeted tasks that are running
+	 *
+	 * @return task count
+	 */
+	public int getTaskCount() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Gets the time budget of the previous tick
+	 *
+	 * @return time budget in nanoseconds
+	 */
+	public long getLastBudget() {
+		return this.lastBudget;
+	}
+
+	/**
+	 * Gets the time spent running budgeted tasks in the previous tick
+	 *
+	 * @return used time in nanoseconds
+	 */
+	public long getLastUsedTime() {
+		return this.lastUsedTime;
+	}
+
+	/**
+	 * Gets the total time spent running the budgeted tasks of a plugin
+	 *
+	 * @param plugin to get the time of
+	 * @return total time in nanoseconds
+	 */
+	public long getTotalTime(Plugin plugin) {
+		final PluginQueue queue = this.queues.get(plugin);
+		return queue == null ? 0 : queue.totalTime;
+	}
+
+	/**
+	 * Adds a budgeted task to run every tick
+	 *
+	 * @param task to add
+	 * @param delay in ticks before the task first runs
+	 */
+	public void add(BudgetedTask task, long delay) {
+		Entry entry = this.entries.get(task);
+		if (entry != null) {
+			entry.delay = delay;
+			return;
+		}
+		entry = new Entry(task, delay);
+		this.entries.put(task, entry);
+		PluginQueue queue = this.queues.get(task.getPlugin());
+		if (queue == null) {
+			queue = new PluginQueue(task.getPlugin());
+			this.queues.put(task.getPlugin(), queue);
+		}
+		queue.entries.add(entry);
+	}
+
+	/**
+	 * Removes a budgeted task so it no longer runs
+	 *
+	 * @param task to remove
+	 */
+	public void remove(BudgetedTask task) {
+		final Entry entry = this.entries.remove(task);
+		if (entry != null) {
+			entry.removed = true;
+		}
+	}
+
+	@Override
+	public void run() {
+		final long startTime = System.nanoTime();
+		long budget = this.maxTime;
+		if (this.lastRunTime != 0) {
+			final long late = (startTime - this.lastRunTime) - TICK_TIME;
+			if (late > 0) {
+				budget = Math.max(this.minTime, budget - late);
+			}
+		}
+		this.lastRunTime = startTime;
+		this.lastBudget = budget;
+
+		// Remove stopped tasks, count down delays and find the plugins that have tasks to run
+		Iterator<PluginQueue> iter = this.queues.values().iterator();
+		while (iter.hasNext()) {
+			final PluginQueue queue = iter.next();
+			if (queue.update()) {
+				this.activeQueues.add(queue);
+			} else if (queue.entries.isEmpty()) {
+				iter.remove();
+			}
+		}
+
+		// Give every plugin an equal share of the time that is left
+		final int count = this.activeQueues.size();
+		final long deadline = startTime + budget;
+		for (int i = 0; i < count; i++) {
+			final PluginQueue queue = this.activeQueues.get((this.rotation + i) % count);
+			final long now = System.nanoTime();
+			if (now >= deadline) {
+				break;
+			}
+			queue.run(now + (deadline - now) / (count - i));
+		}
+		this.activeQueues.clear();
+		this.rotation++;
+		this.lastUsedTime = System.nanoTime() - startTime;
+	}
+
+	private class PluginQueue {
+		public final Plugin plugin;
+		public final List<Entry> entries = new ArrayList<Entry>();
+		public long totalTime = 0;
+
+		public PluginQueue(Plugin plugin) {
+			this.plugin = plugin;
+		}
+
+		/**
+		 * Removes stopped tasks and counts down delays
+		 *
+		 * @return True if there are tasks to run this tick, False if not
+		 */
+		public boolean update() {
+			final boolean enabled = this.plugin.isEnabled();
+			boolean hasTasks = false;
+			Iterator<Entry> iter = this.entries.iterator();
+			while (iter.hasNext()) {
+				final Entry entry = iter.next();
+				if (!enabled && !entry.removed) {
+					entry.task.stop();
+				}
+				if (entry.removed) {
+					iter.remove();
+				} else if (entry.delay > 0) {
+					entry.delay--;
+				} else {
+					hasTasks = true;
+				}
+			}
+			return hasTasks;
+		}
+
+		/**
+		 * Runs the steps of all tasks in turn until the time specified is reached
+		 *
+		 * @param endTime to stop running at
+		 */
+		public void run(long endTime) {
+			final long startTime = System.nanoTime();
+			boolean ranStep;
+			do {
+				ranStep = false;
+				// Tasks added while running are appended and run as well
+				for (int i = 0; i < this.entries.size(); i++) {
+					final Entry entry = this.entries.get(i);
+					if (entry.removed || entry.delay > 0) {
+						continue;
+					}
+					try {
+						entry.task.run();
+					} catch (Throwable t) {
+						CommonPlugin.LOGGER.log(Level.SEVERE, "An error occurred while running a budgeted task of " + this.plugin.getName() + ":");
+						CommonUtil.printFilteredStackTrace(t);
+						entry.task.stop();
+					}
+					ranStep = true;
+					if (System.nanoTime() >= endTime) {
+						ranStep = false;
+						break;
+					}
+				}
+			} while (ranStep);
+			this.totalTime += System.nanoTime() - startTime;
+		}
+	}
+
+	private static class Entry {
+		public final BudgetedTask task;
+		public long delay;
+		public boolean removed = false;
+
+		public Entry(BudgetedTask task, long delay) {
+			this.task = task;
+			this.delay = delay;
+		}
+	}
+}
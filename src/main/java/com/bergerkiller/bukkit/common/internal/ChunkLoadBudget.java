@@ -0,0 +1,235 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.util.ArrayDeque;
+import java.util.logging.Level;
+
+import net.minecraft.server.MinecraftServer;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import com.bergerkiller.bukkit.common.Task;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+
+/**
+ * Limits the time spent and amount of chunks loaded or generated synchronously every tick.<br>
+ * Once the budget of a tick is used up, chunk requests that come with a callback are deferred
+ * to a later tick. Requests without a callback must block, and are logged together with the
+ * plugins that requested them.<br><br>
+ *
+ * The budget is disabled by default, and can be enabled in the configuration of BKCommonLib.
+ */
+public class ChunkLoadBudget extends Task {
+	/**
+	 * Minimum amount of ticks between two logged blocking chunk loads
+	 */
+	private static final int LOG_INTERVAL = 20;
+	private final ArrayDeque<DeferredLoad> deferred = new ArrayDeque<DeferredLoad>();
+	private boolean enabled = false;
+	private long maxTime = 25000000L;
+	private int maxCount = 0;
+	private int tick = -1;
+	private long usedTime = 0;
+	private int usedCount = 0;
+	private int lastLogTick = -LOG_INTERVAL;
+	private int suppressedLogs = 0;
+	private long totalDeferred = 0;
+	private long totalBlocking = 0;
+
+	public ChunkLoadBudget(JavaPlugin plugin) {
+		super(plugin);
+	}
+
+	/**
+	 * Gets whether synchronous chunk loads are limited
+	 *
+	 * @return True if enabled, False if not
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * Sets whether synchronous chunk loads are limited
+	 *
+	 * @param enabled state to set to
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Sets the maximum time that can be spent on synchronous chunk loads and generation every tick
+	 *
+	 * @param milliseconds to set to, 0 for no limit
+	 */
+	public void setMaxTime(double milliseconds) {
+		this.maxTime = (long) (Math.max(0.0, milliseconds) * 1E6);
+	}
+
+	/**
+	 * Sets the maximum amount of chunks that can be loaded or generated synchronously every tick
+	 *
+	 * @param count to set to, 0 for no limit
+	 */
+	public void setMaxCount(int count) {
+		this.maxCount = Math.max(0, count);
+	}
+
+	/**
+	 * Gets the amount of chunk requests that are deferred, waiting for budget in a later tick
+	 *
+	 * @return deferred request count
+	 */
+	public int getDeferredCount() {
+		return this.deferred.size();
+	}
+
+	/**
+	 * Gets the total amount of chunk requests that have been deferred
+	 *
+	 * @return total deferred request count
+	 */
+	public long getTotalDeferred() {
+		return this.totalDeferred;
+	}
+
+	/**
+	 * Gets the total amount of chunk loads that blocked while the budget was used up
+	 *
+	 * @return total blocking load count
+	 */
+	public long getTotalBlocking() {
+		return this.totalBlocking;
+	}
+
+	/**
+	 * Checks whether the budget of the current tick is used up
+	 *
+	 * @return True if exceeded, False if not
+	 */
+	public boolean isExceeded() {
+		updateTick();
+		return (this.maxTime > 0 && this.usedTime >= this.maxTime) || (this.maxCount > 0 && this.usedCount >= this.maxCount);
+	}
+
+	/**
+	 * Adds the time spent on a synchronous chunk request to the budget of the current tick
+	 *
+	 * @param time spent in nanoseconds
+	 * @param loaded whether a chunk got loaded or generated
+	 */
+	public void add(long time, boolean loaded) {
+		updateTick();
+		this.usedTime += time;
+		if (loaded) {
+			this.usedCount++;
+		}
+	}
+
+	/**
+	 * Defers a chunk request to a later tick
+	 *
+	 * @param provider to request the chunk from
+	 * @param x - coordinate of the chunk
+	 * @param z - coordinate of the chunk
+	 * @param callback to run once the chunk is loaded
+	 */
+	public void defer(ChunkProviderServerHook provider, int x, int z, Runnable callback) {
+		this.deferred.add(new DeferredLoad(provider, x, z, callback));
+		this.totalDeferred++;
+	}
+
+	/**
+	 * Logs a chunk load that has to block while the budget is used up
+	 *
+	 * @param world the chunk is in
+	 * @param x - coordinate of the chunk
+	 * @param z - coordinate of the chunk
+	 */
+	public void logBlocking(World world, int x, int z) {
+		this.totalBlocking++;
+		final int currentTick = MinecraftServer.currentTick;
+		if ((currentTick - this.lastLogTick) < LOG_INTERVAL) {
+			this.suppressedLogs++;
+			return;
+		}
+		this.lastLogTick = currentTick;
+
+		// Find out what plugins requested the chunk, ignoring this library
+		StringBuilder msg = new StringBuilder(200);
+		msg.append("Chunk [").append(x).append(", ").append(z).append("] of world '").append(world.getName());
+		msg.append("' was loaded while the tick budget was used up (");
+		msg.append(this.usedCount).append(" chunks, ").append(MathUtil.round(this.usedTime / 1E6, 2)).append(" ms)");
+		msg.append(", requested by: ");
+		boolean found = false;
+		for (Plugin plugin : CommonUtil.findPlugins(Thread.currentThread().getStackTrace())) {
+			if (plugin != CommonPlugin.getInstance()) {
+				if (found) {
+					msg.append(", ");
+				}
+				msg.append(plugin.getName());
+				found = true;
+			}
+		}
+		if (!found) {
+			msg.append("the server");
+		}
+		if (this.suppressedLogs > 0) {
+			msg.append(" (").append(this.suppressedLogs).append(" more since the last message)");
+			this.suppressedLogs = 0;
+		}
+		CommonPlugin.LOGGER.log(Level.WARNING, msg.toString());
+	}
+
+	private static String getRequester(Runnable callback) {
+		final Plugin plugin = CommonUtil.getPluginByClass(callback.getClass());
+		return plugin == null ? "the server" : plugin.getName();
+	}
+
+	private void updateTick() {
+		final int currentTick = MinecraftServer.currentTick;
+		if (this.tick != currentTick) {
+			this.tick = currentTick;
+			this.usedTime = 0;
+			this.usedCount = 0;
+		}
+	}
+
+	@Override
+	public void run() {
+		// Process deferred chunk requests while there is budget left
+		DeferredLoad load;
+		while (!this.isExceeded() && (load = this.deferred.poll()) != null) {
+			final World world = load.provider.getWorld();
+			if (Bukkit.getWorld(world.getUID()) != world) {
+				CommonPlugin.LOGGER.log(Level.WARNING, "Chunk [" + load.x + ", " + load.z + "] of world '" + world.getName() +
+						"' was not loaded because the world unloaded, the callback of " + getRequester(load.callback) + " did not run");
+				continue;
+			}
+			try {
+				load.provider.getChunkAt(load.x, load.z, null);
+				load.callback.run();
+			} catch (Throwable t) {
+				CommonPlugin.LOGGER.log(Level.SEVERE, "An error occurred while loading a deferred chunk:");
+				CommonUtil.printFilteredStackTrace(t);
+			}
+		}
+	}
+
+	private static class DeferredLoad {
+		public final ChunkProviderServerHook provider;
+		public final int x, z;
+		public final Runnable callback;
+
+		public DeferredLoad(ChunkProviderServerHook provider, int x, int z, Runnable callback) {
+			this.provider = provider;
+			this.x = x;
+			this.z = z;
+			this.callback = callback;
+		}
+	}
+}
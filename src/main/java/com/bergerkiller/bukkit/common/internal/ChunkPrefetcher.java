@@ -0,0 +1,306 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.util.Vector;
+
+import com.bergerkiller.bukkit.common.Task;
+import com.bergerkiller.bukkit.common.collections.EntityMap;
+import com.bergerkiller.bukkit.common.reflection.classes.ChunkProviderServerRef;
+import com.bergerkiller.bukkit.common.reflection.classes.ChunkRegionLoaderRef;
+import com.bergerkiller.bukkit.common.utils.ChunkUtil;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+import com.bergerkiller.bukkit.common.wrappers.LongHashSet;
+
+/**
+ * Predicts where players (and the vehicles they are in) are moving to, and loads the chunks
+ * that will come into view asynchronously before the player reaches them.<br><br>
+ *
+ * Only chunks that are saved are prefetched, as generating chunks can not be done asynchronously.
+ * The amount of chunks requested every tick and the amount of requests that are still being loaded
+ * are limited. Prefetched chunks that no player came near are requested for unloading again after a while.
+ * Prefetching is disabled by default, and is enabled using the BKCommonLib configuration or {@link #setEnabled(boolean)}.
+ */
+public class ChunkPrefetcher extends Task {
+	private final EntityMap<Player, PlayerState> players = new EntityMap<Player, PlayerState>();
+	private final Map<World, WorldState> worlds = new WeakHashMap<World, WorldState>();
+	private boolean enabled = false;
+	private int tickBudget = 4;
+	private int maxOutstanding = 32;
+	private int lookAheadTicks = 60;
+	private double minimumSpeed = 0.4;
+	private int expireTicks = 600;
+	private int outstanding = 0;
+	private int currentTick = 0;
+	private long totalRequested = 0;
+	private long totalExpired = 0;
+
+	public ChunkPrefetcher(JavaPlugin plugin) {
+		super(plugin);
+	}
+
+	/**
+	 * Gets whether chunks are being prefetched
+	 *
+	 * @return True if enabled, False if not
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * Sets whether chunks are being prefetched
+	 *
+	 * @param enabled state to set to
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled) {
+			this.players.clear();
+		}
+	}
+
+	/**
+	 * Sets the maximum amount of chunk loads that are requested every tick
+	 *
+	 * @param tickBudget to set to
+	 */
+	public void setTickBudget(int tickBudget) {
+		this.tickBudget = Math.max(0, tickBudget);
+	}
+
+	/**
+	 * Sets the maximum amount of chunk loads that are requested, but not yet loaded
+	 *
+	 * @param maxOutstanding to set to
+	 */
+	public void setMaxOutstanding(int maxOutstanding) {
+		this.maxOutstanding = Math.max(0, maxOutstanding);
+	}
+
+	/**
+	 * Sets the amount of ticks to predict movement ahead of time
+	 *
+	 * @param lookAheadTicks to set to
+	 */
+	public void setLookAheadTicks(int lookAheadTicks) {
+		this.lookAheadTicks = Math.max(1, lookAheadTicks);
+	}
+
+	/**
+	 * Sets the minimum horizontal speed, in blocks per tick, a player must move at for chunks to be prefetched
+	 *
+	 * @param minimumSpeed to set to
+	 */
+	public void setMinimumSpeed(double minimumSpeed) {
+		this.minimumSpeed = minimumSpeed;
+	}
+
+	/**
+	 * Sets the amount of ticks after which a prefetched chunk that is not near any player is unloaded again
+	 *
+	 * @param expireTicks to set to
+	 */
+	public void setExpireTicks(int expireTicks) {
+		this.expireTicks = Math.max(1, expireTicks);
+	}
+
+	/**
+	 * Gets the amount of chunk loads that are requested, but not yet loaded
+	 *
+	 * @return outstanding request count
+	 */
+	public int getOutstanding() {
+		return this.outstanding;
+	}
+
+	/**
+	 * Gets the total amount of chunk loads requested
+	 *
+	 * @return total requested chunk count
+	 */
+	public long getTotalRequested() {
+		return this.totalRequested;
+	}
+
+	/**
+	 * Gets the total amount of prefetched chunks that no player came near, and were unloaded again
+	 *
+	 * @return total expired chunk count
+	 */
+	public long getTotalExpired() {
+		return this.totalExpired;
+	}
+
+	@Override
+	public void run() {
+		this.currentTick++;
+		if (!this.enabled) {
+			return;
+		}
+		int budget = this.tickBudget;
+		for (Player player : CommonUtil.getOnlinePlayers()) {
+			if (budget <= 0 || this.outstanding >= this.maxOutstanding) {
+				break;
+			}
+			budget = prefetch(player, budget);
+		}
+		expirePrefetched();
+	}
+
+	private int prefetch(Player player, int budget) {
+		final Location loc = player.getLocation();
+		final World world = loc.getWorld();
+		PlayerState state = this.players.get(player);
+		if (state == null || state.world != world) {
+			state = new PlayerState(world, loc.getX(), loc.getZ());
+			this.players.put(player, state);
+			return budget;
+		}
+
+		// Vehicles have an accurate server-side velocity, players only have their change in position
+		double vx = loc.getX() - state.x;
+		double vz = loc.getZ() - state.z;
+		state.x = loc.getX();
+		state.z = loc.getZ();
+		final Entity vehicle = player.getVehicle();
+		if (vehicle != null) {
+			final Vector vel = vehicle.getVelocity();
+			if ((vel.getX() * vel.getX() + vel.getZ() * vel.getZ()) > (vx * vx + vz * vz)) {
+				vx = vel.getX();
+				vz = vel.getZ();
+			}
+		}
+		final double speed = Math.sqrt(vx * vx + vz * vz);
+		if (speed < this.minimumSpeed) {
+			return budget;
+		}
+
+		// Walk along the predicted path one chunk at a time
+		// Only the chunks that come into view when moving to the next chunk along the path are requested
+		final WorldState worldState = getWorldState(world);
+		final int view = CommonUtil.VIEW;
+		final double distance = speed * this.lookAheadTicks;
+		final int steps = (int) Math.ceil(distance / 16.0);
+		final double stepX = vx / speed * 16.0;
+		final double stepZ = vz / speed * 16.0;
+		int lastCx = loc.getBlockX() >> 4;
+		int lastCz = loc.getBlockZ() >> 4;
+		for (int step = 1; step <= steps; step++) {
+			final int cx = MathUtil.floor(loc.getX() + stepX * step) >> 4;
+			final int cz = MathUtil.floor(loc.getZ() + stepZ * step) >> 4;
+			if (cx == lastCx && cz == lastCz) {
+				continue;
+			}
+			for (int x = cx - view; x <= cx + view; x++) {
+				for (int z = cz - view; z <= cz + view; z++) {
+					if (Math.abs(x - lastCx) <= view && Math.abs(z - lastCz) <= view) {
+						continue;
+					}
+					if (budget <= 0 || this.outstanding >= this.maxOutstanding) {
+						return 0;
+					}
+					if (request(world, worldState, x, z)) {
+						budget--;
+					}
+				}
+			}
+			lastCx = cx;
+			lastCz = cz;
+		}
+		return budget;
+	}
+
+	private boolean request(World world, final WorldState worldState, final int x, final int z) {
+		final long key = MathUtil.longHashToLong(x, z);
+		if (worldState.requested.contains(key) || world.isChunkLoaded(x, z)) {
+			return false;
+		}
+		final Object cps = CommonNMS.getNative(world).chunkProviderServer;
+		final Object chunkRegionLoader = CommonUtil.tryCast(ChunkProviderServerRef.chunkLoader.get(cps), ChunkRegionLoaderRef.TEMPLATE.getType());
+		if (chunkRegionLoader == null || !ChunkRegionLoaderRef.chunkExists(chunkRegionLoader, world, x, z)) {
+			return false;
+		}
+		worldState.requested.add(key);
+		this.outstanding++;
+		this.totalRequested++;
+		ChunkUtil.getChunkAsync(world, x, z, new Runnable() {
+			public void run() {
+				outstanding--;
+				worldState.loaded.add(new Prefetched(x, z, currentTick));
+			}
+		});
+		return true;
+	}
+
+	private void expirePrefetched() {
+		for (Map.Entry<World, WorldState> entry : this.worlds.entrySet()) {
+			final World world = entry.getKey();
+			final WorldState worldState = entry.getValue();
+			Prefetched prefetched;
+			while ((prefetched = worldState.loaded.peek()) != null && (this.currentTick - prefetched.tick) >= this.expireTicks) {
+				worldState.loaded.poll();
+				worldState.requested.remove(MathUtil.longHashToLong(prefetched.x, prefetched.z));
+				if (!isNearPlayer(world, prefetched.x, prefetched.z)) {
+					world.unloadChunkRequest(prefetched.x, prefetched.z, true);
+					this.totalExpired++;
+				}
+			}
+		}
+	}
+
+	private static boolean isNearPlayer(World world, int cx, int cz) {
+		final int view = CommonUtil.VIEW;
+		for (Player player : world.getPlayers()) {
+			final Location loc = player.getLocation();
+			if (Math.abs((loc.getBlockX() >> 4) - cx) <= view && Math.abs((loc.getBlockZ() >> 4) - cz) <= view) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private WorldState getWorldState(World world) {
+		WorldState state = this.worlds.get(world);
+		if (state == null) {
+			state = new WorldState();
+			this.worlds.put(world, state);
+		}
+		return state;
+	}
+
+	private static class PlayerState {
+		public final World world;
+		public double x, z;
+
+		public PlayerState(World world, double x, double z) {
+			this.world = world;
+			this.x = x;
+			this.z = z;
+		}
+	}
+
+	private static class WorldState {
+		public final LongHashSet requested = new LongHashSet();
+		public final ArrayDeque<Prefetched> loaded = new ArrayDeque<Prefetched>();
+	}
+
+	private static class Prefetched {
+		public final int x, z;
+		public final int tick;
+
+		public Prefetched(int x, int z, int tick) {
+			this.x = x;
+			this.z = z;
+			this.tick = tick;
+		}
+	}
+}
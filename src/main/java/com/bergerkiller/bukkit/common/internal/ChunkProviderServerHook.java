@@ -117,6 +117,35 @@ public class ChunkProviderServerHook extends ChunkProviderServer {
 
 	@Override
 	public Chunk getChunkAt(int x, int z, Runnable runnable) {
+		// Limit the amount of synchronous chunk loads and generation per tick
+		final ChunkLoadBudget budget = CommonPlugin.hasInstance() ? CommonPlugin.getInstance().getChunkLoadBudget() : null;
+		if (budget == null || !budget.isEnabled() || this.isChunkLoaded(x, z)) {
+			return getChunkAtTimed(x, z, runnable);
+		}
+		if (budget.isExceeded()) {
+			if (runnable == null) {
+				budget.logBlocking(getWorld(), x, z);
+			} else if (!canLoadAsync(x, z)) {
+				budget.defer(this, x, z, runnable);
+				return null;
+			}
+		}
+		final long time = System.nanoTime();
+		Chunk chunk = null;
+		try {
+			chunk = getChunkAtTimed(x, z, runnable);
+		} finally {
+			budget.add(System.nanoTime() - time, chunk != null);
+		}
+		return chunk;
+	}
+
+	private boolean canLoadAsync(int x, int z) {
+		final Object chunkRegionLoader = CommonUtil.tryCast(ChunkProviderServerRef.chunkLoader.get(this), ChunkRegionLoaderRef.TEMPLATE.getType());
+		return chunkRegionLoader != null && ChunkRegionLoaderRef.chunkExists(chunkRegionLoader, getWorld(), x, z);
+	}
+
+	private Chunk getChunkAtTimed(int x, int z, Runnable runnable) {
 		// Perform chunk generation timings
 		if (!CommonPlugin.TIMINGS.isActive()) {
 			return super.getChunkAt(x, z, runnable);
@@ -131,14 +160,11 @@ public class ChunkProviderServerHook extends ChunkProviderServer {
 				runnable.run();
 			}
 			return CommonNMS.getNative(chunk);
-		} else if (runnable != null) {
-			// Queue chunk for loading Async
-			final Object chunkRegionLoader = CommonUtil.tryCast(ChunkProviderServerRef.chunkLoader.get(this), ChunkRegionLoaderRef.TEMPLATE.getType());
-			if (chunkRegionLoader != null && ChunkRegionLoaderRef.chunkExists(chunkRegionLoader, getWorld(), x, z)) {
-				// Schedule for loading Async - return null to indicate that no chunk is loaded yet
-				ChunkRegionLoaderRef.queueChunkLoad(chunkRegionLoader, getWorld(), this, x, z, runnable);
-				return null;
-			}
+		} else if (runnable != null && canLoadAsync(x, z)) {
+			// Schedule for loading Async - return null to indicate that no chunk is loaded yet
+			final Object chunkRegionLoader = ChunkProviderServerRef.chunkLoader.get(this);
+			ChunkRegionLoaderRef.queueChunkLoad(chunkRegionLoader, getWorld(), this, x, z, runnable);
+			return null;
 		}
 
 		// Try to load the chunk from file
@@ -198,6 +224,11 @@ public class ChunkProviderServerHook extends ChunkProviderServer {
 		// Perhaps load some neighboring chunks? (population related)
 		ChunkRef.loadNeighbours(chunkHandle, this, this, x, z);
 
+		// The chunk is loaded synchronously, run the callback right away
+		if (runnable != null) {
+			runnable.run();
+		}
+
 		// Successful load!
 		return chunkHandle;
 	}
@@ -0,0 +1,248 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.generator.BlockPopulator;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import com.bergerkiller.bukkit.common.MessageBuilder;
+import com.bergerkiller.bukkit.common.Task;
+import com.bergerkiller.bukkit.common.metrics.Timer;
+import com.bergerkiller.bukkit.common.metrics.TimingStatistic;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+
+/**
+ * Aggregates the chunk load, generation and unload times per World, and the populate times
+ * per Block Populator Class. Only collects data while registered as a timings listener.
+ * While collecting, the timings are periodically exported to a CSV and a JSON file in the plugin data folder.<br><br>
+ *
+ * The timings are recorded in timers of the metrics registry, named <i>bkcommonlib.chunks.[type].[name]</i>.
+ */
+public class ChunkTimings implements TimingsListener {
+	/**
+	 * Interval in ticks at which the collected timings are exported
+	 */
+	private static final int EXPORT_INTERVAL = 20 * 60 * 5;
+	private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+	private static final String METRIC_PREFIX = "bkcommonlib.chunks.";
+	private final JavaPlugin plugin;
+	private final Map<String, Timer> entries = new LinkedHashMap<String, Timer>();
+	/**
+	 * The same timers mapped by type and then by name, so looking one up does not create a key
+	 */
+	private final Map<String, Map<String, Timer>> timers = new HashMap<String, Map<String, Timer>>();
+	private Task exportTask = null;
+
+	public ChunkTimings(JavaPlugin plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Gets whether this timings listener is currently collecting data
+	 *
+	 * @return True if enabled, False if not
+	 */
+	public boolean isEnabled() {
+		return this.exportTask != null;
+	}
+
+	/**
+	 * Starts or stops collecting chunk timings
+	 *
+	 * @param enabled state to set to
+	 */
+	public void setEnabled(boolean enabled) {
+		if (this.isEnabled() == enabled) {
+			return;
+		}
+		if (enabled) {
+			CommonPlugin.getInstance().addTimingsListener(this);
+			this.exportTask = new Task(this.plugin) {
+				public void run() {
+					export();
+				}
+			}.start(EXPORT_INTERVAL, EXPORT_INTERVAL);
+		} else {
+			CommonPlugin.getInstance().removeTimingsListener(this);
+			this.exportTask.stop();
+			this.exportTask = null;
+			this.export();
+		}
+	}
+
+	/**
+	 * Clears all the collected timings
+	 */
+	public void reset() {
+		for (String key : this.entries.keySet()) {
+			CommonPlugin.METRICS.remove(getMetricName(key));
+		}
+		this.entries.clear();
+		this.timers.clear();
+	}
+
+	/**
+	 * Gets a copy of all the collected timings, mapped by type and name (for example <i>load:world</i>)
+	 *
+	 * @return collected timings
+	 */
+	public Map<String, TimingStatistic> getStatistics() {
+		final Map<String, TimingStatistic> result = new LinkedHashMap<String, TimingStatistic>(this.entries.size());
+		for (Map.Entry<String, Timer> entry : this.entries.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getSnapshot());
+		}
+		return result;
+	}
+
+	private Timer getStatistic(String type, String name) {
+		Map<String, Timer> byName = this.timers.get(type);
+		if (byName == null) {
+			byName = new HashMap<String, Timer>();
+			this.timers.put(type, byName);
+		}
+		Timer timer = byName.get(name);
+		if (timer == null) {
+			final String key = type + ":" + name;
+			timer = CommonPlugin.METRICS.getTimer(getMetricName(key));
+			byName.put(name, timer);
+			this.entries.put(key, timer);
+		}
+		return timer;
+	}
+
+	private static String getMetricName(String key) {
+		return METRIC_PREFIX + key.replace(':', '.');
+	}
+
+	@Override
+	public void onChunkLoad(Chunk chunk, long executionTime) {
+		getStatistic("load", chunk.getWorld().getName()).record(executionTime);
+	}
+
+	@Override
+	public void onChunkGenerate(Chunk chunk, long executionTime) {
+		getStatistic("generate", chunk.getWorld().getName()).record(executionTime);
+	}
+
+	@Override
+	public void onChunkUnloading(World world, long executionTime) {
+		getStatistic("unload", world.getName()).record(executionTime);
+	}
+
+	@Override
+	public void onChunkPopulate(Chunk chunk, BlockPopulator populator, long executionTime) {
+		getStatistic("populate", populator.getClass().getName()).record(executionTime);
+	}
+
+	public void onNextTicked(Runnable runnable, long executionTime) {}
+
+	/**
+	 * Writes the collected timings to chunktimings.csv and chunktimings.json in the plugin data folder
+	 */
+	public void export() {
+		if (this.entries.isEmpty()) {
+			return;
+		}
+		try {
+			final File folder = this.plugin.getDataFolder();
+			folder.mkdirs();
+			writeCSV(new File(folder, "chunktimings.csv"));
+			writeJSON(new File(folder, "chunktimings.json"));
+		} catch (IOException ex) {
+			CommonPlugin.LOGGER.log(Level.WARNING, "Failed to export chunk timings: " + ex.getMessage());
+		}
+	}
+
+	private void writeCSV(File file) throws IOException {
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			writer.write("type,name,count,total_ms,avg_ms,p50_ms,p95_ms,p99_ms,max_ms");
+			writer.newLine();
+			for (Map.Entry<String, Timer> entry : this.entries.entrySet()) {
+				final String key = entry.getKey();
+				final int split = key.indexOf(':');
+				final TimingStatistic statistic = entry.getValue().getSnapshot();
+				writer.write(key.substring(0, split));
+				writer.write(",\"" + key.substring(split + 1).replace("\"", "\"\"") + "\",");
+				writer.write(statistic.getCount() + "," + toMillis(statistic.getTotal()) + "," + toMillis(statistic.getAverage()));
+				for (double percentile : PERCENTILES) {
+					writer.write("," + toMillis(statistic.getPercentile(percentile)));
+				}
+				writer.write("," + toMillis(statistic.getMax()));
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void writeJSON(File file) throws IOException {
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			writer.write("[");
+			boolean first = true;
+			for (Map.Entry<String, Timer> entry : this.entries.entrySet()) {
+				final String key = entry.getKey();
+				final int split = key.indexOf(':');
+				final TimingStatistic statistic = entry.getValue().getSnapshot();
+				writer.write(first ? "" : ",");
+				writer.newLine();
+				writer.write("  {\"type\": \"" + key.substring(0, split) + "\", ");
+				writer.write("\"name\": \"" + key.substring(split + 1).replace("\\", "\\\\").replace("\"", "\\\"") + "\", ");
+				writer.write("\"count\": " + statistic.getCount() + ", ");
+				writer.write("\"total_ms\": " + toMillis(statistic.getTotal()) + ", ");
+				writer.write("\"avg_ms\": " + toMillis(statistic.getAverage()) + ", ");
+				writer.write("\"p50_ms\": " + toMillis(statistic.getPercentile(0.5)) + ", ");
+				writer.write("\"p95_ms\": " + toMillis(statistic.getPercentile(0.95)) + ", ");
+				writer.write("\"p99_ms\": " + toMillis(statistic.getPercentile(0.99)) + ", ");
+				writer.write("\"max_ms\": " + toMillis(statistic.getMax()) + "}");
+				first = false;
+			}
+			writer.newLine();
+			writer.write("]");
+			writer.newLine();
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Sends the collected timings, per type of operation, to a command sender
+	 *
+	 * @param sender to send the timings to
+	 */
+	public void send(CommandSender sender) {
+		MessageBuilder message = new MessageBuilder();
+		if (this.entries.isEmpty()) {
+			message.yellow("No chunk timings have been collected");
+			if (!this.isEnabled()) {
+				message.yellow(" (collecting is disabled)");
+			}
+			message.send(sender);
+			return;
+		}
+		message.green("Chunk timings (count / p50 / p95 / p99 / max in ms):");
+		for (Map.Entry<String, Timer> entry : this.entries.entrySet()) {
+			final TimingStatistic statistic = entry.getValue().getSnapshot();
+			message.newLine().yellow(entry.getKey(), ": ");
+			message.gray(statistic.getCount(), "x ");
+			message.white(toMillis(statistic.getPercentile(0.5)), " / ", toMillis(statistic.getPercentile(0.95)), " / ");
+			message.white(toMillis(statistic.getPercentile(0.99)), " / ", toMillis(statistic.getMax()));
+		}
+		message.send(sender);
+	}
+
+	private static double toMillis(double nanoTime) {
+		return MathUtil.round(nanoTime / 1E6, 3);
+	}
+}
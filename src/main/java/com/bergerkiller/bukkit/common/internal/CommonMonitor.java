@@ -0,0 +1,210 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.bukkit.entity.Player;
+
+import com.bergerkiller.bukkit.common.TaskFuture;
+import com.bergerkiller.bukkit.common.metrics.TimingStatistic;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+
+/**
+ * Exposes the internal state of BKCommonLib as a JMX MBean named
+ * <i>com.bergerkiller.bukkit.common:type=CommonMonitor</i>.<br>
+ * JMX requests arrive on their own threads, so state owned by the main thread is read
+ * using a task on the main thread. When the main thread does not respond in time,
+ * such attributes are unavailable (null).
+ */
+public class CommonMonitor implements CommonMonitorMXBean {
+	private static final long SYNC_TIMEOUT = 5000;
+	private final CommonPlugin plugin;
+	private ObjectName name = null;
+
+	public CommonMonitor(CommonPlugin plugin) {
+		this.plugin = plugin;
+	}
+
+	/**
+	 * Registers this monitor with the platform MBean server
+	 */
+	public void register() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName("com.bergerkiller.bukkit.common:type=CommonMonitor");
+			if (server.isRegistered(name)) {
+				// Left behind by a previous instance (reload)
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			this.name = name;
+		} catch (Throwable t) {
+			CommonPlugin.LOGGER.log(Level.WARNING, "Failed to register the JMX monitor: " + t.getMessage());
+		}
+	}
+
+	/**
+	 * Unregisters this monitor from the platform MBean server
+	 */
+	public void unregister() {
+		if (this.name == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);
+		} catch (Throwable t) {
+			CommonPlugin.LOGGER.log(Level.WARNING, "Failed to unregister the JMX monitor: " + t.getMessage());
+		}
+		this.name = null;
+	}
+
+	private <T> T callSync(Callable<T> task) {
+		if (!this.plugin.isEnabled()) {
+			return null;
+		}
+		try {
+			if (Thread.currentThread() == CommonUtil.MAIN_THREAD) {
+				return task.call();
+			}
+			return TaskFuture.supplySync(this.plugin, task).get(SYNC_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (Throwable t) {
+			return null;
+		}
+	}
+
+	@Override
+	public String getPacketHandlerName() {
+		final PacketHandler handler = this.plugin.getPacketHandler();
+		return handler == null ? null : handler.getName();
+	}
+
+	@Override
+	public Map<Integer, Integer> getPacketListenerCounts() {
+		return callSync(new Callable<Map<Integer, Integer>>() {
+			public Map<Integer, Integer> call() {
+				final PacketHandler handler = plugin.getPacketHandler();
+				final Map<Integer, Integer> counts = new LinkedHashMap<Integer, Integer>();
+				for (int id = 0; id < 256; id++) {
+					final int count = handler.getListening(id).size();
+					if (count > 0) {
+						counts.put(id, count);
+					}
+				}
+				return counts;
+			}
+		});
+	}
+
+	@Override
+	public Map<String, Long> getPendingBytes() {
+		return callSync(new Callable<Map<String, Long>>() {
+			public Map<String, Long> call() {
+				final Map<String, Long> bytes = new HashMap<String, Long>();
+				for (Player player : CommonUtil.getOnlinePlayers()) {
+					bytes.put(player.getName(), plugin.getPendingBytesSample(player));
+				}
+				return bytes;
+			}
+		});
+	}
+
+	@Override
+	public long getNextTickBacklog() {
+		return this.plugin.getNextTickQueue().getBacklog();
+	}
+
+	@Override
+	public long getNextTickTotalRun() {
+		return this.plugin.getNextTickQueue().getTotalRun();
+	}
+
+	@Override
+	public int getEntityMapCount() {
+		final int[] sizes = getEntityMapSizes();
+		return sizes == null ? 0 : sizes.length;
+	}
+
+	@Override
+	public int[] getEntityMapSizes() {
+		return callSync(new Callable<int[]>() {
+			public int[] call() {
+				return plugin.getEntityMapSizes();
+			}
+		});
+	}
+
+	@Override
+	public boolean isChunkTimingsEnabled() {
+		final ChunkTimings timings = this.plugin.getChunkTimings();
+		return timings != null && timings.isEnabled();
+	}
+
+	@Override
+	public Map<String, Long> getChunkTimingCounts() {
+		final Map<String, TimingStatistic> statistics = getChunkTimings();
+		if (statistics == null) {
+			return null;
+		}
+		final Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, TimingStatistic> entry : statistics.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getCount());
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Double> getChunkTimingAverages() {
+		final Map<String, TimingStatistic> statistics = getChunkTimings();
+		if (statistics == null) {
+			return null;
+		}
+		final Map<String, Double> result = new LinkedHashMap<String, Double>();
+		for (Map.Entry<String, TimingStatistic> entry : statistics.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getAverage() / 1E6);
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Double> getChunkTimingPercentiles99() {
+		final Map<String, TimingStatistic> statistics = getChunkTimings();
+		if (statistics == null) {
+			return null;
+		}
+		final Map<String, Double> result = new LinkedHashMap<String, Double>();
+		for (Map.Entry<String, TimingStatistic> entry : statistics.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getPercentile(0.99) / 1E6);
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Double> getChunkTimingMaximums() {
+		final Map<String, TimingStatistic> statistics = getChunkTimings();
+		if (statistics == null) {
+			return null;
+		}
+		final Map<String, Double> result = new LinkedHashMap<String, Double>();
+		for (Map.Entry<String, TimingStatistic> entry : statistics.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getMax() / 1E6);
+		}
+		return result;
+	}
+
+	private Map<String, TimingStatistic> getChunkTimings() {
+		return callSync(new Callable<Map<String, TimingStatistic>>() {
+			public Map<String, TimingStatistic> call() {
+				final ChunkTimings timings = plugin.getChunkTimings();
+				return timings == null ? new HashMap<String, TimingStatistic>() : timings.getStatistics();
+			}
+		});
+	}
+}
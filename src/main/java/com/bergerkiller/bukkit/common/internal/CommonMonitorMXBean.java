@@ -0,0 +1,94 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.util.Map;
+
+/**
+ * Management interface exposing the internal state of BKCommonLib through JMX.
+ * All times are in milliseconds.
+ */
+public interface CommonMonitorMXBean {
+
+	/**
+	 * Gets the name of the packet handler in use
+	 *
+	 * @return packet handler name
+	 */
+	public String getPacketHandlerName();
+
+	/**
+	 * Gets the amount of plugins listening for every packet id that is listened to
+	 *
+	 * @return listening plugin count per packet id
+	 */
+	public Map<Integer, Integer> getPacketListenerCounts();
+
+	/**
+	 * Gets the amount of pending outbound bytes of every player, as measured the last time connections were sampled
+	 *
+	 * @return pending bytes per player name
+	 */
+	public Map<String, Long> getPendingBytes();
+
+	/**
+	 * Gets the amount of tasks waiting to run the next tick
+	 *
+	 * @return next tick backlog
+	 */
+	public long getNextTickBacklog();
+
+	/**
+	 * Gets the total amount of tasks that ran as next-tick task
+	 *
+	 * @return next tick tasks run
+	 */
+	public long getNextTickTotalRun();
+
+	/**
+	 * Gets the amount of Entity Maps that are still in use
+	 *
+	 * @return Entity Map count
+	 */
+	public int getEntityMapCount();
+
+	/**
+	 * Gets the sizes of all the Entity Maps that are still in use
+	 *
+	 * @return Entity Map sizes
+	 */
+	public int[] getEntityMapSizes();
+
+	/**
+	 * Gets whether chunk timings are being collected
+	 *
+	 * @return True if collected, False if not
+	 */
+	public boolean isChunkTimingsEnabled();
+
+	/**
+	 * Gets the amount of chunk timing samples collected per type and name
+	 *
+	 * @return sample count per entry
+	 */
+	public Map<String, Long> getChunkTimingCounts();
+
+	/**
+	 * Gets the average chunk timings per type and name
+	 *
+	 * @return average time per entry
+	 */
+	public Map<String, Double> getChunkTimingAverages();
+
+	/**
+	 * Gets the estimated 99th percentile chunk timings per type and name
+	 *
+	 * @return 99th percentile time per entry
+	 */
+	public Map<String, Double> getChunkTimingPercentiles99();
+
+	/**
+	 * Gets the longest chunk timings per type and name
+	 *
+	 * @return maximum time per entry
+	 */
+	public Map<String, Double> getChunkTimingMaximums();
+}
@@ -1,5 +1,6 @@
 package com.bergerkiller.bukkit.common.internal;
 
+import java.io.File;
 import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -8,6 +9,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -36,17 +38,27 @@ import com.bergerkiller.bukkit.common.PluginBase;
 import com.bergerkiller.bukkit.common.Task;
 import com.bergerkiller.bukkit.common.TypedValue;
 import com.bergerkiller.bukkit.common.collections.EntityMap;
+import com.bergerkiller.bukkit.common.config.FileConfiguration;
+import com.bergerkiller.bukkit.common.controller.EntityController;
+import com.bergerkiller.bukkit.common.controller.EntityNetworkController;
 import com.bergerkiller.bukkit.common.entity.CommonEntity;
 import com.bergerkiller.bukkit.common.events.CommonEventFactory;
 import com.bergerkiller.bukkit.common.events.EntityRemoveFromServerEvent;
 import com.bergerkiller.bukkit.common.internal.network.CommonPacketHandler;
 import com.bergerkiller.bukkit.common.internal.network.ProtocolLibPacketHandler;
 import com.bergerkiller.bukkit.common.internal.network.SpigotPacketHandler;
+import com.bergerkiller.bukkit.common.metrics.FileMetricsExporter;
+import com.bergerkiller.bukkit.common.metrics.Gauge;
+import com.bergerkiller.bukkit.common.metrics.MetricsRegistry;
 import com.bergerkiller.bukkit.common.metrics.MyDependingPluginsGraph;
 import com.bergerkiller.bukkit.common.metrics.SoftDependenciesGraph;
+import com.bergerkiller.bukkit.common.metrics.Timer;
+import com.bergerkiller.bukkit.common.permissions.NoPermissionException;
 import com.bergerkiller.bukkit.common.protocol.PacketType;
+import com.bergerkiller.bukkit.common.region.RegionScan;
 import com.bergerkiller.bukkit.common.tab.TabController;
 import com.bergerkiller.bukkit.common.utils.CommonUtil;
+import com.bergerkiller.bukkit.common.utils.ParseUtil;
 import com.bergerkiller.bukkit.common.utils.PacketUtil;
 import com.bergerkiller.bukkit.common.utils.StringUtil;
 import com.bergerkiller.bukkit.common.utils.WorldUtil;
@@ -69,21 +81,41 @@ public class CommonPlugin extends PluginBase {
 	 * Timings class
 	 */
 	public static final TimingsRootListener TIMINGS = new TimingsRootListener();
+	/*
+	 * Per-plugin execution time profiler
+	 */
+	public static final PluginProfiler PROFILER = new PluginProfiler();
+	/*
+	 * Timers, counters and gauges shared by all plugins
+	 */
+	public static final MetricsRegistry METRICS = new MetricsRegistry();
 	/*
 	 * Remaining internal variables
 	 */
 	private static CommonPlugin instance;
 	public final List<PluginBase> plugins = new ArrayList<PluginBase>();
 	private EntityMap<Player, LongHashSet> playerVisibleChunks;
+	private EntityMap<Entity, CommonEntity<?>> entityWrappers;
+	private EntityMap<Player, Long> pendingBytesSamples;
+	private long maxPendingBytesSample = 0L;
 	protected final Map<World, CommonWorldListener> worldListeners = new HashMap<World, CommonWorldListener>();
 	private CommonListener listener;
 	private final ArrayList<SoftReference<EntityMap>> maps = new ArrayList<SoftReference<EntityMap>>();
-	private final List<Runnable> nextTickTasks = new ArrayList<Runnable>();
-	private final List<Runnable> nextTickSync = new ArrayList<Runnable>();
+	private final NextTickQueue nextTickQueue = new NextTickQueue();
 	private final List<TimingsListener> timingsListeners = new ArrayList<TimingsListener>(1);
 	private final List<Task> startedTasks = new ArrayList<Task>();
 	private final HashSet<org.bukkit.entity.Entity> entitiesToRemove = new HashSet<org.bukkit.entity.Entity>();
 	private final HashMap<String, TypedValue> debugVariables = new HashMap<String, TypedValue>();
+	private final ControllerTimings controllerTimings = new ControllerTimings();
+	private ChunkTimings chunkTimings;
+	private ChunkPrefetcher chunkPrefetcher;
+	private ChunkLoadBudget chunkLoadBudget;
+	private BudgetedTaskScheduler budgetedTaskScheduler;
+	private WorkerPool workerPool;
+	private LagSpikeWatchdog lagSpikeWatchdog;
+	private CommonMonitor monitor;
+	private MetricsExportTask metricsExportTask;
+	private boolean remoteMetrics = true;
 	private CommonEventFactory eventFactory;
 	private boolean isShowcaseEnabled = false;
 	private boolean isSCSEnabled = false;
@@ -130,10 +162,38 @@ public class CommonPlugin extends PluginBase {
 		this.maps.add(new SoftReference(map));
 	}
 
-	public void nextTick(Runnable runnable) {
-		synchronized (this.nextTickTasks) {
-			this.nextTickTasks.add(runnable);
+	/**
+	 * Gets the sizes of all the Entity Maps that are still in use.
+	 * Should only be called from the main thread.
+	 * 
+	 * @return Entity Map sizes
+	 */
+	public int[] getEntityMapSizes() {
+		final List<EntityMap> alive = new ArrayList<EntityMap>(this.maps.size());
+		for (SoftReference<EntityMap> ref : this.maps) {
+			final EntityMap map = ref.get();
+			if (map != null) {
+				alive.add(map);
+			}
+		}
+		final int[] sizes = new int[alive.size()];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = alive.get(i).size();
 		}
+		return sizes;
+	}
+
+	public void nextTick(Runnable runnable) {
+		this.nextTickQueue.add(runnable);
+	}
+
+	/**
+	 * Obtains the queue of tasks that are run the next tick
+	 * 
+	 * @return next tick queue
+	 */
+	public NextTickQueue getNextTickQueue() {
+		return nextTickQueue;
 	}
 
 	public <T> TypedValue<T> getDebugVariable(String name, Class<T> type, T value) {
@@ -161,6 +221,69 @@ public class CommonPlugin extends PluginBase {
 		}
 	}
 
+	/**
+	 * Obtains the timings listener that aggregates Entity Controller execution times
+	 * 
+	 * @return controller timings
+	 */
+	public ControllerTimings getControllerTimings() {
+		return controllerTimings;
+	}
+
+	/**
+	 * Obtains the timings listener that aggregates chunk load, generation and populate times
+	 * 
+	 * @return chunk timings
+	 */
+	public ChunkTimings getChunkTimings() {
+		return chunkTimings;
+	}
+
+	/**
+	 * Obtains the service that loads chunks ahead of moving players asynchronously
+	 * 
+	 * @return chunk prefetcher
+	 */
+	public ChunkPrefetcher getChunkPrefetcher() {
+		return chunkPrefetcher;
+	}
+
+	/**
+	 * Obtains the budget that limits synchronous chunk loads and generation every tick
+	 * 
+	 * @return chunk load budget
+	 */
+	public ChunkLoadBudget getChunkLoadBudget() {
+		return chunkLoadBudget;
+	}
+
+	/**
+	 * Obtains the scheduler that runs the steps of budgeted tasks every tick
+	 * 
+	 * @return budgeted task scheduler
+	 */
+	public BudgetedTaskScheduler getBudgetedTaskScheduler() {
+		return budgetedTaskScheduler;
+	}
+
+	/**
+	 * Obtains the shared pool of worker threads that runs asynchronous tasks
+	 * 
+	 * @return worker pool
+	 */
+	public WorkerPool getWorkerPool() {
+		return workerPool;
+	}
+
+	/**
+	 * Obtains the watchdog that samples the main thread while a tick takes too long
+	 * 
+	 * @return lag spike watchdog
+	 */
+	public LagSpikeWatchdog getLagSpikeWatchdog() {
+		return lagSpikeWatchdog;
+	}
+
 	public void addTimingsListener(TimingsListener listener) {
 		this.timingsListeners.add(listener);
 	}
@@ -239,6 +362,37 @@ public class CommonPlugin extends PluginBase {
 		return false;
 	}
 
+	/**
+	 * Obtains the map storing the Common Entity wrappers handed out for Entities.
+	 * Entries are removed once the Entity is removed from its World or its chunk unloads.
+	 * Access to this map should be synchronized on the map itself.
+	 * 
+	 * @return Common Entity wrapper map
+	 */
+	public EntityMap<Entity, CommonEntity<?>> getEntityWrappers() {
+		return entityWrappers;
+	}
+
+	/**
+	 * Gets the amount of pending outbound bytes of a player, as measured the last time connections were sampled
+	 * 
+	 * @param player to get the sampled pending bytes of
+	 * @return sampled pending bytes
+	 */
+	public long getPendingBytesSample(Player player) {
+		final Long bytes = pendingBytesSamples.get(player);
+		return bytes == null ? 0L : bytes.longValue();
+	}
+
+	/**
+	 * Gets the highest amount of pending outbound bytes of all players, as measured the last time connections were sampled
+	 * 
+	 * @return highest sampled pending bytes
+	 */
+	public long getMaxPendingBytesSample() {
+		return maxPendingBytesSample;
+	}
+
 	public boolean isChunkVisible(Player player, int chunkX, int chunkZ) {
 		synchronized (playerVisibleChunks) {
 			LongHashSet chunks = playerVisibleChunks.get(player);
@@ -298,6 +452,24 @@ public class CommonPlugin extends PluginBase {
 		return eventFactory;
 	}
 
+	/**
+	 * Obtains the task that periodically passes all metrics to the registered exporters
+	 * 
+	 * @return metrics export task
+	 */
+	public MetricsExportTask getMetricsExportTask() {
+		return metricsExportTask;
+	}
+
+	/**
+	 * Gets whether plugins are allowed to send usage statistics to mcstats.org
+	 * 
+	 * @return True if remote uploading is enabled, False if not
+	 */
+	public boolean isRemoteMetricsEnabled() {
+		return remoteMetrics;
+	}
+
 	/**
 	 * Obtains the Packet Handler used for packet listeners/monitors and packet sending
 	 * 
@@ -399,6 +571,12 @@ public class CommonPlugin extends PluginBase {
 
 	@Override
 	public void disable() {
+		// Stop collecting and export the last chunk timings
+		if (chunkTimings != null) {
+			chunkTimings.setEnabled(false);
+		}
+		PROFILER.setEnabled(false);
+
 		instance = null;
 		// Disable listeners
 		for (CommonWorldListener listener : worldListeners.values()) {
@@ -413,6 +591,32 @@ public class CommonPlugin extends PluginBase {
 		}
 		startedTasks.clear();
 
+		// Stop watching the main thread
+		if (lagSpikeWatchdog != null) {
+			lagSpikeWatchdog.stopWatching();
+			lagSpikeWatchdog = null;
+		}
+
+		// Remove the gauges and JMX monitor referring to this instance
+		METRICS.removeAll("bkcommonlib.");
+		if (monitor != null) {
+			monitor.unregister();
+			monitor = null;
+		}
+
+		// Stop exporting metrics
+		if (metricsExportTask != null) {
+			metricsExportTask.closeExporters();
+			metricsExportTask = null;
+		}
+
+		// Stop the worker threads
+		RegionScan.cancelAll();
+		if (workerPool != null) {
+			workerPool.shutdown();
+			workerPool = null;
+		}
+
 		// Disable the packet handlers
 		try {
 			packetHandler.onDisable();
@@ -486,8 +690,13 @@ public class CommonPlugin extends PluginBase {
 		// Initialize event factory
 		eventFactory = new CommonEventFactory();
 
+		// Initialize the worker pool used by asynchronous tasks
+		workerPool = new WorkerPool("BKCommonLib", Math.max(2, Runtime.getRuntime().availableProcessors()), 1024);
+
 		// Initialize entity map (needs to be here because of CommonPlugin instance needed)
 		playerVisibleChunks = new EntityMap<Player, LongHashSet>();
+		entityWrappers = new EntityMap<Entity, CommonEntity<?>>();
+		pendingBytesSamples = new EntityMap<Player, Long>();
 
 		// Register events and tasks, initialize
 		register(listener = new CommonListener());
@@ -497,6 +706,20 @@ public class CommonPlugin extends PluginBase {
 		startedTasks.add(new NextTickHandler(this).start(1, 1));
 		startedTasks.add(new MoveEventHandler(this).start(1, 1));
 		startedTasks.add(new EntityRemovalHandler(this).start(1, 1));
+		startedTasks.add(new PendingBytesHandler(this).start(1, PendingBytesHandler.INTERVAL));
+		chunkPrefetcher = new ChunkPrefetcher(this);
+		startedTasks.add(chunkPrefetcher.start(1, 1));
+		chunkLoadBudget = new ChunkLoadBudget(this);
+		startedTasks.add(chunkLoadBudget.start(1, 1));
+		budgetedTaskScheduler = new BudgetedTaskScheduler(this);
+		startedTasks.add(budgetedTaskScheduler.start(1, 1));
+		chunkTimings = new ChunkTimings(this);
+		lagSpikeWatchdog = new LagSpikeWatchdog(getDataFolder());
+		lagSpikeWatchdog.start();
+		registerGauges();
+		monitor = new CommonMonitor(this);
+		monitor.register();
+		loadConfig();
 
 		// Register listeners and hooks
 		for (World world : WorldUtil.getWorlds()) {
@@ -520,8 +743,133 @@ public class CommonPlugin extends PluginBase {
 		}
 	}
 
+	private void loadConfig() {
+		FileConfiguration config = new FileConfiguration(this);
+		config.load();
+		config.setHeader("prefetchChunks", "\nWhether saved chunks are loaded asynchronously ahead of moving players");
+		config.addHeader("prefetchChunks", "Plugins can also enable this through the chunk prefetcher API");
+		if (config.get("prefetchChunks", false)) {
+			chunkPrefetcher.setEnabled(true);
+		}
+		config.setHeader("chunkLoadBudget", "\nLimits the time spent loading and generating chunks on the main thread every tick");
+		config.addHeader("chunkLoadBudget", "Chunk requests that come with a callback are deferred to a later tick once the limit is reached");
+		config.addHeader("chunkLoadBudget", "maxTime is in milliseconds, maxCount is the amount of chunks; set either to 0 for no limit");
+		chunkLoadBudget.setEnabled(config.get("chunkLoadBudget.enabled", false));
+		chunkLoadBudget.setMaxTime(config.get("chunkLoadBudget.maxTime", 25.0));
+		chunkLoadBudget.setMaxCount(config.get("chunkLoadBudget.maxCount", 0));
+		config.setHeader("profileEvents", "\nWhether event handlers of plugins can be measured using /commontimings plugins");
+		config.addHeader("profileEvents", "This adds a small overhead to every event handler call, even while not measuring");
+		config.addHeader("profileEvents", "Only applies to listeners registered after enabling, restart the server after changing it");
+		PROFILER.setProfilingEvents(config.get("profileEvents", false));
+		config.setHeader("metrics", "\nSettings for the usage statistics and performance metrics of BKCommonLib and depending plugins");
+		config.addHeader("metrics", "Set remoteUpload to false to never send statistics to mcstats.org");
+		config.addHeader("metrics", "Set export to 'json' or 'prometheus' to periodically write all metrics to the metrics folder");
+		config.addHeader("metrics", "JSON lines are written to a file per day, of which the last keepDays days are kept");
+		config.addHeader("metrics", "Exported are the next-tick and worker pool statistics, the plugin graphs and, while measured,");
+		config.addHeader("metrics", "the chunk, controller and network timings");
+		remoteMetrics = config.get("metrics.remoteUpload", true);
+		final String export = config.get("metrics.export", "none").toLowerCase(Locale.ENGLISH);
+		final int interval = config.get("metrics.exportInterval", 60);
+		final int keepDays = config.get("metrics.keepDays", 7);
+		config.save();
+
+		metricsExportTask = new MetricsExportTask(this);
+		final File folder = new File(getDataFolder(), "metrics");
+		if (export.equals("json")) {
+			metricsExportTask.addExporter(new FileMetricsExporter(folder, FileMetricsExporter.Format.JSON_LINES, keepDays));
+		} else if (export.equals("prometheus")) {
+			metricsExportTask.addExporter(new FileMetricsExporter(folder, FileMetricsExporter.Format.PROMETHEUS, keepDays));
+		} else if (!export.equals("none")) {
+			log(Level.WARNING, "Unknown metrics export format '" + export + "', use json, prometheus or none");
+		}
+		final long intervalTicks = Math.max(1, interval) * 20L;
+		startedTasks.add(metricsExportTask.start(intervalTicks, intervalTicks));
+	}
+
+	private void registerGauges() {
+		final WorkerPool pool = workerPool;
+		final ChunkLoadBudget budget = chunkLoadBudget;
+		METRICS.registerGauge("bkcommonlib.nexttick.backlog", new Gauge() {
+			public double getValue() {
+				return nextTickQueue.getBacklog();
+			}
+		});
+		METRICS.registerGauge("bkcommonlib.workerpool.active", new Gauge() {
+			public double getValue() {
+				return pool.getActiveCount();
+			}
+		});
+		METRICS.registerGauge("bkcommonlib.workerpool.queued", new Gauge() {
+			public double getValue() {
+				return pool.getQueueSize();
+			}
+		});
+		METRICS.registerGauge("bkcommonlib.chunks.deferred", new Gauge() {
+			public double getValue() {
+				return budget.getDeferredCount();
+			}
+		});
+	}
+
 	@Override
 	public boolean command(CommandSender sender, String command, String[] args) {
+		if (command.equals("commontimings") || command.equals("ctimings")) {
+			if (!sender.hasPermission("bkcommonlib.command.timings")) {
+				throw new NoPermissionException();
+			}
+			final String type = args.length >= 1 ? args[0].toLowerCase(Locale.ENGLISH) : "";
+			final String action = args.length >= 2 ? args[1].toLowerCase(Locale.ENGLISH) : "";
+			if (type.equals("controllers")) {
+				if (action.equals("start")) {
+					controllerTimings.setEnabled(true);
+					sender.sendMessage(ChatColor.GREEN + "Now collecting Entity Controller timings");
+				} else if (action.equals("stop")) {
+					controllerTimings.setEnabled(false);
+					sender.sendMessage(ChatColor.YELLOW + "No longer collecting Entity Controller timings");
+				} else if (action.equals("reset")) {
+					controllerTimings.reset();
+					sender.sendMessage(ChatColor.YELLOW + "Entity Controller timings have been reset");
+				} else {
+					controllerTimings.send(sender);
+				}
+			} else if (type.equals("chunks")) {
+				if (action.equals("start")) {
+					chunkTimings.setEnabled(true);
+					sender.sendMessage(ChatColor.GREEN + "Now collecting chunk timings");
+				} else if (action.equals("stop")) {
+					chunkTimings.setEnabled(false);
+					sender.sendMessage(ChatColor.YELLOW + "No longer collecting chunk timings");
+				} else if (action.equals("reset")) {
+					chunkTimings.reset();
+					sender.sendMessage(ChatColor.YELLOW + "Chunk timings have been reset");
+				} else if (action.equals("export")) {
+					chunkTimings.export();
+					sender.sendMessage(ChatColor.GREEN + "Chunk timings have been exported to the BKCommonLib plugin folder");
+				} else {
+					chunkTimings.send(sender);
+				}
+			} else if (type.equals("plugins")) {
+				if (action.equals("start")) {
+					PROFILER.setEnabled(true);
+					sender.sendMessage(ChatColor.GREEN + "Now collecting plugin timings");
+				} else if (action.equals("stop")) {
+					PROFILER.setEnabled(false);
+					sender.sendMessage(ChatColor.YELLOW + "No longer collecting plugin timings");
+				} else if (action.equals("reset")) {
+					PROFILER.reset();
+					sender.sendMessage(ChatColor.YELLOW + "Plugin timings have been reset");
+				} else {
+					PROFILER.send(sender, ParseUtil.parseInt(action, 60));
+				}
+			} else {
+				MessageBuilder message = new MessageBuilder();
+				message.green("Available timings: ").yellow("controllers, chunks, plugins").newLine();
+				message.green("Usage: /commontimings [type] [start/stop/reset/export]").newLine();
+				message.green("Usage: /commontimings plugins [seconds] to show the plugin timings of the last seconds");
+				message.send(sender);
+			}
+			return true;
+		}
 		if (debugVariables.isEmpty()) {
 			return false;
 		}
@@ -573,7 +921,9 @@ public class CommonPlugin extends PluginBase {
 					if (map == null) {
 						iter.remove();
 					} else if (!map.isEmpty()) {
-						map.keySet().removeAll(removed);
+						synchronized (map) {
+							map.keySet().removeAll(removed);
+						}
 					}
 				}
 				// Fire events
@@ -589,24 +939,29 @@ public class CommonPlugin extends PluginBase {
 	}
 
 	private static class NextTickHandler extends Task {
+		private final Timer timer = METRICS.getTimer("bkcommonlib.nexttick.time");
+
 		public NextTickHandler(JavaPlugin plugin) {
 			super(plugin);
 		}
 
 		@Override
 		public void run() {
-			List<Runnable> nextTick = getInstance().nextTickTasks;
-			List<Runnable> nextSync = getInstance().nextTickSync;
-			synchronized (nextTick) {
-				if (nextTick.isEmpty()) {
-					return;
-				}
-				nextSync.addAll(nextTick);
-				nextTick.clear();
-			}
+			getInstance().lagSpikeWatchdog.heartbeat();
+			final long runStartTime = System.nanoTime();
+			runTasks();
+			this.timer.stop(runStartTime);
+		}
+
+		private void runTasks() {
+			final NextTickQueue queue = getInstance().nextTickQueue;
+			queue.drain();
+			// Tasks exceeding the limit stay queued for the next tick
+			int remaining = queue.getMaxPerTick() == 0 ? Integer.MAX_VALUE : queue.getMaxPerTick();
+			Runnable task;
 			if (!TIMINGS.isActive()) {
 				// No time measurement needed
-				for (Runnable task : nextSync) {
+				while (remaining-- > 0 && (task = queue.poll()) != null) {
 					try {
 						task.run();
 					} catch (Throwable t) {
@@ -617,7 +972,7 @@ public class CommonPlugin extends PluginBase {
 			} else {
 				// Perform time measurement and call next-tick listeners
 				long startTime, delta, endTime = System.nanoTime();
-				for (Runnable task : nextSync) {
+				while (remaining-- > 0 && (task = queue.poll()) != null) {
 					startTime = endTime;
 					try {
 						task.run();
@@ -630,7 +985,29 @@ public class CommonPlugin extends PluginBase {
 					TIMINGS.onNextTicked(task, delta);
 				}
 			}
-			nextSync.clear();
+		}
+	}
+
+	private static class PendingBytesHandler extends Task {
+		public static final int INTERVAL = 5;
+
+		public PendingBytesHandler(JavaPlugin plugin) {
+			super(plugin);
+		}
+
+		@Override
+		public void run() {
+			final CommonPlugin plugin = getInstance();
+			long max = 0L;
+			plugin.pendingBytesSamples.clear();
+			for (Player player : CommonUtil.getOnlinePlayers()) {
+				final long bytes = PacketUtil.getPendingBytes(player);
+				if (bytes > 0L) {
+					plugin.pendingBytesSamples.put(player, bytes);
+					max = Math.max(max, bytes);
+				}
+			}
+			plugin.maxPendingBytesSample = max;
 		}
 	}
 
@@ -664,7 +1041,7 @@ public class CommonPlugin extends PluginBase {
 		public void onChunkPopulate(Chunk chunk, BlockPopulator populator, long executionTime) {}
 	}
 
-	public static class TimingsRootListener implements TimingsListener {
+	public static class TimingsRootListener implements ControllerTimingsListener {
 
 		/**
 		 * Gets whether timings are active, and should be informed of information
@@ -739,5 +1116,56 @@ public class CommonPlugin extends PluginBase {
 				}
 			}
 		}
+
+		@Override
+		public void onControllerTick(EntityController<?> controller, long executionTime) {
+			if (isActive()) {
+				TimingsListener listener;
+				for (int i = 0; i < instance.timingsListeners.size(); i++) {
+					listener = instance.timingsListeners.get(i);
+					if (listener instanceof ControllerTimingsListener) {
+						try {
+							((ControllerTimingsListener) listener).onControllerTick(controller, executionTime);
+						} catch (Throwable t) {
+							LOGGER_TIMINGS.log(Level.SEVERE, "An error occurred while calling timings event", t);
+						}
+					}
+				}
+			}
+		}
+
+		@Override
+		public void onControllerMove(EntityController<?> controller, long executionTime) {
+			if (isActive()) {
+				TimingsListener listener;
+				for (int i = 0; i < instance.timingsListeners.size(); i++) {
+					listener = instance.timingsListeners.get(i);
+					if (listener instanceof ControllerTimingsListener) {
+						try {
+							((ControllerTimingsListener) listener).onControllerMove(controller, executionTime);
+						} catch (Throwable t) {
+							LOGGER_TIMINGS.log(Level.SEVERE, "An error occurred while calling timings event", t);
+						}
+					}
+				}
+			}
+		}
+
+		@Override
+		public void onNetworkControllerSync(EntityNetworkController<?> controller, long executionTime) {
+			if (isActive()) {
+				TimingsListener listener;
+				for (int i = 0; i < instance.timingsListeners.size(); i++) {
+					listener = instance.timingsListeners.get(i);
+					if (listener instanceof ControllerTimingsListener) {
+						try {
+							((ControllerTimingsListener) listener).onNetworkControllerSync(controller, executionTime);
+						} catch (Throwable t) {
+							LOGGER_TIMINGS.log(Level.SEVERE, "An error occurred while calling timings event", t);
+						}
+					}
+				}
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.generator.BlockPopulator;
+import org.bukkit.plugin.Plugin;
+
+import com.bergerkiller.bukkit.common.MessageBuilder;
+import com.bergerkiller.bukkit.common.controller.EntityController;
+import com.bergerkiller.bukkit.common.controller.EntityNetworkController;
+import com.bergerkiller.bukkit.common.metrics.Timer;
+import com.bergerkiller.bukkit.common.metrics.TimingStatistic;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+
+/**
+ * Aggregates the execution times of Entity Controllers and Entity Network Controllers
+ * per controller Class and per owning Plugin. Only collects data while registered as a timings listener.<br><br>
+ *
+ * The timings are recorded in timers of the metrics registry, named <i>bkcommonlib.controller.tick.[plugin].[class]</i>,
+ * <i>bkcommonlib.controller.move.[plugin].[class]</i> and <i>bkcommonlib.network.sync.[plugin].[class]</i>.
+ */
+public class ControllerTimings implements ControllerTimingsListener {
+	private static final String[] OPERATIONS = {"onTick", "onMove", "onSync"};
+	private static final String[] METRIC_PREFIXES = {"bkcommonlib.controller.tick.", "bkcommonlib.controller.move.", "bkcommonlib.network.sync."};
+	private static final int TICK = 0;
+	private static final int MOVE = 1;
+	private static final int SYNC = 2;
+	private final Map<Class<?>, ControllerEntry> entries = new LinkedHashMap<Class<?>, ControllerEntry>();
+	private boolean enabled = false;
+
+	/**
+	 * Gets whether this timings listener is currently collecting data
+	 *
+	 * @return True if enabled, False if not
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * Starts or stops collecting controller timings
+	 *
+	 * @param enabled state to set to
+	 */
+	public void setEnabled(boolean enabled) {
+		if (this.enabled == enabled) {
+			return;
+		}
+		this.enabled = enabled;
+		if (enabled) {
+			CommonPlugin.getInstance().addTimingsListener(this);
+		} else {
+			CommonPlugin.getInstance().removeTimingsListener(this);
+		}
+	}
+
+	/**
+	 * Clears all the collected timings
+	 */
+	public void reset() {
+		for (ControllerEntry entry : this.entries.values()) {
+			for (int i = 0; i < METRIC_PREFIXES.length; i++) {
+				CommonPlugin.METRICS.remove(entry.getMetricName(i));
+			}
+		}
+		this.entries.clear();
+	}
+
+	private Timer getStatistic(Object controller, int operation) {
+		final Class<?> type = controller.getClass();
+		ControllerEntry entry = this.entries.get(type);
+		if (entry == null) {
+			entry = new ControllerEntry(type);
+			this.entries.put(type, entry);
+		}
+		return entry.getTimer(operation);
+	}
+
+	@Override
+	public void onControllerTick(EntityController<?> controller, long executionTime) {
+		getStatistic(controller, TICK).record(executionTime);
+	}
+
+	@Override
+	public void onControllerMove(EntityController<?> controller, long executionTime) {
+		getStatistic(controller, MOVE).record(executionTime);
+	}
+
+	@Override
+	public void onNetworkControllerSync(EntityNetworkController<?> controller, long executionTime) {
+		getStatistic(controller, SYNC).record(executionTime);
+	}
+
+	public void onNextTicked(Runnable runnable, long executionTime) {}
+	public void onChunkLoad(Chunk chunk, long executionTime) {}
+	public void onChunkGenerate(Chunk chunk, long executionTime) {}
+	public void onChunkUnloading(World world, long executionTime) {}
+	public void onChunkPopulate(Chunk chunk, BlockPopulator populator, long executionTime) {}
+
+	/**
+	 * Sends the collected timings, per owning Plugin and per controller Class, to a command sender
+	 *
+	 * @param sender to send the timings to
+	 */
+	public void send(CommandSender sender) {
+		MessageBuilder message = new MessageBuilder();
+		if (this.entries.isEmpty()) {
+			message.yellow("No controller timings have been collected");
+			if (!this.enabled) {
+				message.yellow(" (collecting is disabled)");
+			}
+			message.send(sender);
+			return;
+		}
+
+		// Group snapshots of the controller entries by plugin, most expensive first
+		final Map<String, List<EntrySnapshot>> byPlugin = new LinkedHashMap<String, List<EntrySnapshot>>();
+		final Map<String, TimingStatistic> pluginTotals = new LinkedHashMap<String, TimingStatistic>();
+		final List<EntrySnapshot> sorted = new ArrayList<EntrySnapshot>(this.entries.size());
+		for (ControllerEntry entry : this.entries.values()) {
+			sorted.add(new EntrySnapshot(entry));
+		}
+		Collections.sort(sorted, new Comparator<EntrySnapshot>() {
+			public int compare(EntrySnapshot o1, EntrySnapshot o2) {
+				final long t1 = o1.getTotal();
+				final long t2 = o2.getTotal();
+				return t1 == t2 ? 0 : (t1 < t2 ? 1 : -1);
+			}
+		});
+		for (EntrySnapshot entry : sorted) {
+			List<EntrySnapshot> list = byPlugin.get(entry.entry.pluginName);
+			TimingStatistic total = pluginTotals.get(entry.entry.pluginName);
+			if (list == null) {
+				list = new ArrayList<EntrySnapshot>();
+				byPlugin.put(entry.entry.pluginName, list);
+				total = new TimingStatistic();
+				pluginTotals.put(entry.entry.pluginName, total);
+			}
+			list.add(entry);
+			for (TimingStatistic statistic : entry.statistics) {
+				total.add(statistic);
+			}
+		}
+
+		message.green("Controller timings (min / avg / p99 / max in ms):");
+		for (Map.Entry<String, List<EntrySnapshot>> pluginEntry : byPlugin.entrySet()) {
+			message.newLine().yellow(pluginEntry.getKey(), ": ");
+			appendStatistic(message, pluginTotals.get(pluginEntry.getKey()));
+			for (EntrySnapshot entry : pluginEntry.getValue()) {
+				for (int i = 0; i < OPERATIONS.length; i++) {
+					if (entry.statistics[i].getCount() > 0) {
+						message.newLine().white("  ", entry.entry.name, ".", OPERATIONS[i], ": ");
+						appendStatistic(message, entry.statistics[i]);
+					}
+				}
+			}
+		}
+		message.send(sender);
+	}
+
+	private static void appendStatistic(MessageBuilder message, TimingStatistic statistic) {
+		message.gray(statistic.getCount(), "x ");
+		message.white(toMillis(statistic.getMin()), " / ", toMillis(statistic.getAverage()), " / ");
+		message.white(toMillis(statistic.getPercentile(0.99)), " / ", toMillis(statistic.getMax()));
+	}
+
+	private static double toMillis(double nanoTime) {
+		return MathUtil.round(nanoTime / 1E6, 3);
+	}
+
+	private static class ControllerEntry {
+		public final Class<?> type;
+		public final String name;
+		public final String pluginName;
+		private final Timer[] timers = new Timer[OPERATIONS.length];
+
+		public ControllerEntry(Class<?> type) {
+			this.type = type;
+			this.name = type.getName().substring(type.getName().lastIndexOf('.') + 1);
+			final Plugin plugin = CommonUtil.getPluginByClass(type);
+			this.pluginName = plugin == null ? "Unknown" : plugin.getName();
+		}
+
+		public String getMetricName(int operation) {
+			return METRIC_PREFIXES[operation] + this.pluginName + "." + this.name;
+		}
+
+		public Timer getTimer(int operation) {
+			if (this.timers[operation] == null) {
+				this.timers[operation] = CommonPlugin.METRICS.getTimer(getMetricName(operation));
+			}
+			return this.timers[operation];
+		}
+	}
+
+	private static class EntrySnapshot {
+		public final ControllerEntry entry;
+		public final TimingStatistic[] statistics = new TimingStatistic[OPERATIONS.length];
+
+		public EntrySnapshot(ControllerEntry entry) {
+			this.entry = entry;
+			for (int i = 0; i < statistics.length; i++) {
+				statistics[i] = entry.timers[i] == null ? new TimingStatistic() : entry.timers[i].getSnapshot();
+			}
+		}
+
+		public long getTotal() {
+			long total = 0;
+			for (TimingStatistic statistic : statistics) {
+				total += statistic.getTotal();
+			}
+			return total;
+		}
+	}
+}
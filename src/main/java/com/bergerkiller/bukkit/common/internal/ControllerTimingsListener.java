@@ -0,0 +1,34 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import com.bergerkiller.bukkit.common.controller.EntityController;
+import com.bergerkiller.bukkit.common.controller.EntityNetworkController;
+
+/**
+ * A timings listener that is also informed of the execution times of Entity Controllers.
+ * Registered timings listeners that implement this interface receive these callbacks as well.
+ */
+public interface ControllerTimingsListener extends TimingsListener {
+	/**
+	 * Called after the Entity Controller of a hooked Entity finished ticking the Entity
+	 * 
+	 * @param controller that was ticked
+	 * @param executionTime of the onTick operation (nanoseconds)
+	 */
+	void onControllerTick(EntityController<?> controller, long executionTime);
+
+	/**
+	 * Called after the Entity Controller of a hooked Entity finished moving the Entity
+	 * 
+	 * @param controller that performed the movement
+	 * @param executionTime of the onMove operation (nanoseconds)
+	 */
+	void onControllerMove(EntityController<?> controller, long executionTime);
+
+	/**
+	 * Called after an Entity Network Controller finished synchronizing the Entity to the viewers
+	 * 
+	 * @param controller that synchronized
+	 * @param executionTime of the onSync operation (nanoseconds)
+	 */
+	void onNetworkControllerSync(EntityNetworkController<?> controller, long executionTime);
+}
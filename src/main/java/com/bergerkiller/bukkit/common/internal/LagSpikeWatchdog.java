@@ -0,0 +1,220 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.Plugin;
+
+import com.bergerkiller.bukkit.common.StackTraceFilter;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+
+/**
+ * Watches the progress of the main thread using a heartbeat that is sent every tick.
+ * When a tick takes longer than a threshold, the stack of the main thread is sampled at a short
+ * interval until the tick finishes. The samples are then written to the lagspikes folder in the
+ * plugin data folder as folded stacks (one line per unique stack: frames from root to leaf separated
+ * by semicolons, followed by the sample count), together with a summary naming the plugins
+ * the samples were spent in.
+ */
+public class LagSpikeWatchdog extends Thread {
+	private static final int MAX_SAMPLES = 5000;
+	private final File folder;
+	private volatile boolean stopRequested = false;
+	private volatile long lastHeartbeat = 0;
+	private volatile long threshold = 1000000000L;
+	private volatile long sampleInterval = 10;
+	private final Map<String, Sample> samples = new HashMap<String, Sample>();
+	private int sampleCount = 0;
+	private long spikeHeartbeat = 0;
+
+	public LagSpikeWatchdog(File dataFolder) {
+		super("BKCommonLib-Watchdog");
+		this.folder = new File(dataFolder, "lagspikes");
+		this.setDaemon(true);
+	}
+
+	/**
+	 * Sets the time a tick has to take before the main thread is sampled
+	 *
+	 * @param milliseconds to set to
+	 */
+	public void setThreshold(long milliseconds) {
+		this.threshold = Math.max(1L, milliseconds) * 1000000L;
+	}
+
+	/**
+	 * Sets the interval at which the main thread is sampled while a tick takes too long
+	 *
+	 * @param milliseconds to set to
+	 */
+	public void setSampleInterval(long milliseconds) {
+		this.sampleInterval = Math.max(1L, milliseconds);
+	}
+
+	/**
+	 * Signals that the main thread is making progress. Should be called every tick.
+	 */
+	public void heartbeat() {
+		this.lastHeartbeat = System.nanoTime();
+	}
+
+	/**
+	 * Stops the watchdog thread
+	 */
+	public void stopWatching() {
+		this.stopRequested = true;
+		this.interrupt();
+	}
+
+	@Override
+	public void run() {
+		while (!this.stopRequested) {
+			try {
+				Thread.sleep(this.sampleInterval);
+			} catch (InterruptedException ex) {
+				break;
+			}
+			final long heartbeat = this.lastHeartbeat;
+			if (heartbeat == 0) {
+				continue;
+			}
+			if (this.sampleCount > 0 && heartbeat != this.spikeHeartbeat) {
+				// The main thread made progress again: the spike is over
+				report(heartbeat - this.spikeHeartbeat);
+			} else if ((System.nanoTime() - heartbeat) >= this.threshold) {
+				if (this.sampleCount == 0) {
+					this.spikeHeartbeat = heartbeat;
+				}
+				if (this.sampleCount < MAX_SAMPLES) {
+					sample();
+				}
+			}
+		}
+		if (this.sampleCount > 0) {
+			report(System.nanoTime() - this.spikeHeartbeat);
+		}
+	}
+
+	private void sample() {
+		final List<StackTraceElement> elements = new ArrayList<StackTraceElement>(Arrays.asList(CommonUtil.MAIN_THREAD.getStackTrace()));
+		StackTraceFilter.SERVER.filter(elements);
+		final StringBuilder folded = new StringBuilder(elements.size() * 40);
+		for (int i = elements.size() - 1; i >= 0; i--) {
+			final StackTraceElement element = elements.get(i);
+			folded.append(element.getClassName()).append('.').append(element.getMethodName());
+			if (i > 0) {
+				folded.append(';');
+			}
+		}
+		final String key = folded.toString();
+		Sample sample = this.samples.get(key);
+		if (sample == null) {
+			sample = new Sample(key, elements);
+			this.samples.put(key, sample);
+		}
+		sample.count++;
+		this.sampleCount++;
+	}
+
+	private void report(long duration) {
+		// Attribute every sample to the plugin closest to the top of the stack
+		final Map<String, Integer> pluginSamples = new HashMap<String, Integer>();
+		for (Sample sample : this.samples.values()) {
+			final Plugin[] plugins = CommonUtil.findPlugins(sample.elements);
+			final String name = plugins.length == 0 ? "server" : plugins[0].getName();
+			final Integer count = pluginSamples.get(name);
+			pluginSamples.put(name, (count == null ? 0 : count.intValue()) + sample.count);
+		}
+		final List<Map.Entry<String, Integer>> plugins = new ArrayList<Map.Entry<String, Integer>>(pluginSamples.entrySet());
+		Collections.sort(plugins, new Comparator<Map.Entry<String, Integer>>() {
+			public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+				return b.getValue().compareTo(a.getValue());
+			}
+		});
+		final List<Sample> sorted = new ArrayList<Sample>(this.samples.values());
+		Collections.sort(sorted, new Comparator<Sample>() {
+			public int compare(Sample a, Sample b) {
+				return b.count - a.count;
+			}
+		});
+
+		final double millis = MathUtil.round(duration / 1E6, 1);
+		final String name = "spike-" + new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+		final StringBuilder msg = new StringBuilder(200);
+		msg.append("The server thread did not respond for ").append(millis).append(" ms, mostly in ");
+		msg.append(plugins.get(0).getKey()).append(" (");
+		msg.append(plugins.get(0).getValue() * 100 / this.sampleCount).append("% of ").append(this.sampleCount).append(" samples)");
+		try {
+			this.folder.mkdirs();
+			writeSummary(new File(this.folder, name + ".txt"), millis, plugins, sorted.get(0));
+			writeFolded(new File(this.folder, name + ".folded"), sorted);
+			msg.append(", see lagspikes/").append(name).append(".txt");
+		} catch (IOException ex) {
+			msg.append(" (failed to write the report: ").append(ex.getMessage()).append(")");
+		}
+		CommonPlugin.LOGGER.log(Level.WARNING, msg.toString());
+
+		this.samples.clear();
+		this.sampleCount = 0;
+	}
+
+	private void writeSummary(File file, double millis, List<Map.Entry<String, Integer>> plugins, Sample top) throws IOException {
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			writer.write("Server thread did not respond for " + millis + " ms (" + this.sampleCount + " samples)");
+			writer.newLine();
+			writer.newLine();
+			writer.write("Samples per plugin:");
+			writer.newLine();
+			for (Map.Entry<String, Integer> entry : plugins) {
+				writer.write("  " + entry.getKey() + ": " + entry.getValue() + " (" + (entry.getValue() * 100 / this.sampleCount) + "%)");
+				writer.newLine();
+			}
+			writer.newLine();
+			writer.write("Most sampled stack (" + top.count + " samples):");
+			writer.newLine();
+			for (StackTraceElement element : top.elements) {
+				writer.write("  at " + element.toString());
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void writeFolded(File file, List<Sample> sorted) throws IOException {
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			for (Sample sample : sorted) {
+				writer.write(sample.folded + " " + sample.count);
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static class Sample {
+		public final String folded;
+		public final List<StackTraceElement> elements;
+		public int count = 0;
+
+		public Sample(String folded, List<StackTraceElement> elements) {
+			this.folded = folded;
+			this.elements = elements;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+
+import com.bergerkiller.bukkit.common.PluginBase;
+import com.bergerkiller.bukkit.common.Task;
+import com.bergerkiller.bukkit.common.metrics.Counter;
+import com.bergerkiller.bukkit.common.metrics.Gauge;
+import com.bergerkiller.bukkit.common.metrics.MetricsExporter;
+import com.bergerkiller.bukkit.common.metrics.Timer;
+import com.bergerkiller.bukkit.common.metrics.TimingStatistic;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+
+/**
+ * Periodically collects the metrics in {@link CommonPlugin#METRICS} and the numeric graph plotters
+ * of all plugins using Metrics, and passes them to all registered exporters.<br>
+ * This includes the performance counters of the library itself: the chunk timings (<i>bkcommonlib.chunks.*</i>),
+ * the controller and network timings (<i>bkcommonlib.controller.*</i>, <i>bkcommonlib.network.sync.*</i>),
+ * and the next-tick and worker pool statistics (<i>bkcommonlib.nexttick.*</i>, <i>bkcommonlib.workerpool.*</i>).
+ * The chunk, controller and network timings are only updated while they are being measured.<br>
+ * Values are collected on the main thread, exporting happens on the worker pool.
+ * If the worker pool is full, the values of that interval are not exported.
+ * Timers are exported as their count, mean, 50th, 95th and 99th percentile and maximum (milliseconds)
+ * since they were created. Plotters are exported as <i>graph.[plugin].[graph].[plotter]</i>.
+ */
+public class MetricsExportTask extends Task {
+	private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+	private final List<MetricsExporter> exporters = new CopyOnWriteArrayList<MetricsExporter>();
+	private volatile boolean exporting = false;
+
+	public MetricsExportTask(CommonPlugin plugin) {
+		super(plugin);
+	}
+
+	/**
+	 * Adds an exporter to pass the collected values to
+	 *
+	 * @param exporter to add
+	 */
+	public void addExporter(MetricsExporter exporter) {
+		this.exporters.add(exporter);
+	}
+
+	/**
+	 * Removes and closes a previously added exporter
+	 *
+	 * @param exporter to remove
+	 */
+	public void removeExporter(MetricsExporter exporter) {
+		if (this.exporters.remove(exporter)) {
+			exporter.close();
+		}
+	}
+
+	/**
+	 * Removes and closes all exporters
+	 */
+	public void closeExporters() {
+		for (MetricsExporter exporter : this.exporters) {
+			removeExporter(exporter);
+		}
+	}
+
+	/**
+	 * Collects the current values of all metrics and numeric graph plotters.
+	 * Should be called on the main thread.
+	 *
+	 * @return metric values, sorted by name
+	 */
+	public Map<String, Double> collect() {
+		final Map<String, Double> values = new TreeMap<String, Double>();
+		for (Map.Entry<String, Timer> entry : CommonPlugin.METRICS.getTimers().entrySet()) {
+			final TimingStatistic statistic = entry.getValue().getSnapshot();
+			final String name = entry.getKey();
+			values.put(name + ".count", (double) statistic.getCount());
+			values.put(name + ".mean", statistic.getAverage() / 1E6);
+			for (double percentile : PERCENTILES) {
+				values.put(name + ".p" + (int) (percentile * 100.0), statistic.getPercentile(percentile) / 1E6);
+			}
+			values.put(name + ".max", statistic.getMax() / 1E6);
+		}
+		for (Map.Entry<String, Counter> entry : CommonPlugin.METRICS.getCounters().entrySet()) {
+			values.put(entry.getKey(), (double) entry.getValue().get());
+		}
+		for (Map.Entry<String, Gauge> entry : CommonPlugin.METRICS.getGauges().entrySet()) {
+			try {
+				values.put(entry.getKey(), entry.getValue().getValue());
+			} catch (Throwable t) {
+				CommonPlugin.LOGGER.log(Level.WARNING, "Failed to read gauge '" + entry.getKey() + "': " + t.getMessage());
+			}
+		}
+		for (PluginBase plugin : CommonPlugin.getInstance().plugins) {
+			if (!plugin.hasMetrics()) {
+				continue;
+			}
+			try {
+				for (Map.Entry<String, Double> entry : plugin.getMetrics().getPlotterValues().entrySet()) {
+					values.put("graph." + plugin.getName() + "." + entry.getKey(), entry.getValue());
+				}
+			} catch (Throwable t) {
+				CommonPlugin.LOGGER.log(Level.WARNING, "Failed to read the metrics graphs of " + plugin.getName() + ":");
+				CommonUtil.printFilteredStackTrace(t);
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public void run() {
+		if (this.exporters.isEmpty() || this.exporting) {
+			return;
+		}
+		final long time = System.currentTimeMillis();
+		final Map<String, Double> values = collect();
+		final Runnable exportTask = new Runnable() {
+			public void run() {
+				try {
+					for (MetricsExporter exporter : exporters) {
+						try {
+							exporter.export(time, values);
+						} catch (Throwable t) {
+							CommonPlugin.LOGGER.log(Level.WARNING, "Failed to export metrics: " + t.getMessage());
+						}
+					}
+				} finally {
+					exporting = false;
+				}
+			}
+		};
+		this.exporting = true;
+		if (!CommonPlugin.getInstance().getWorkerPool().execute(getPlugin(), exportTask)) {
+			// Worker pool is full, skip this interval rather than writing files on the main thread
+			this.exporting = false;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Queue of tasks to run the next tick. Any thread can add tasks without locking,
+ * while only the main thread takes them out again.<br><br>
+ *
+ * Added tasks are pushed onto a linked stack using compare-and-set. Every tick the main thread
+ * takes the whole stack at once, restores the order in which the tasks were added and moves them
+ * into a pending queue. An optional limit on the amount of tasks run every tick leaves the remaining
+ * tasks in the pending queue, to be run first the next tick.
+ */
+public class NextTickQueue {
+	private static final int RATE_INTERVAL = 20;
+	private final AtomicReference<Node> head = new AtomicReference<Node>();
+	private final AtomicLong totalAdded = new AtomicLong();
+	private final ArrayDeque<Runnable> pending = new ArrayDeque<Runnable>();
+	private long totalRun = 0;
+	private int maxPerTick = 0;
+	private int drainCount = 0;
+	private long rateSampleAdded = 0;
+	private long addRate = 0;
+
+	/**
+	 * Adds a task to run the next tick. This method is thread safe.
+	 *
+	 * @param task to add
+	 */
+	public void add(Runnable task) {
+		final Node node = new Node(task);
+		this.totalAdded.incrementAndGet();
+		Node next;
+		do {
+			next = this.head.get();
+			node.next = next;
+		} while (!this.head.compareAndSet(next, node));
+	}
+
+	/**
+	 * Moves all added tasks into the pending queue, in the order they were added.
+	 * Should only be called from the main thread.
+	 */
+	public void drain() {
+		if (++this.drainCount >= RATE_INTERVAL) {
+			final long added = this.totalAdded.get();
+			this.addRate = added - this.rateSampleAdded;
+			this.rateSampleAdded = added;
+			this.drainCount = 0;
+		}
+		Node node = this.head.getAndSet(null);
+		if (node == null) {
+			return;
+		}
+		// The stack holds the most recently added task first: reverse it
+		Node prev = null, next;
+		while (node != null) {
+			next = node.next;
+			node.next = prev;
+			prev = node;
+			node = next;
+		}
+		for (node = prev; node != null; node = node.next) {
+			this.pending.add(node.task);
+		}
+	}
+
+	/**
+	 * Takes the next pending task out of the queue.
+	 * Should only be called from the main thread.
+	 *
+	 * @return next task, or null if none are pending
+	 */
+	public Runnable poll() {
+		final Runnable task = this.pending.poll();
+		if (task != null) {
+			this.totalRun++;
+		}
+		return task;
+	}
+
+	/**
+	 * Gets the maximum amount of tasks that are run every tick
+	 *
+	 * @return maximum task count, 0 if there is no limit
+	 */
+	public int getMaxPerTick() {
+		return this.maxPerTick;
+	}
+
+	/**
+	 * Sets the maximum amount of tasks that are run every tick.
+	 * Tasks that exceed this limit are run the tick after.
+	 *
+	 * @param maxPerTick to set to, 0 for no limit
+	 */
+	public void setMaxPerTick(int maxPerTick) {
+		this.maxPerTick = Math.max(0, maxPerTick);
+	}
+
+	/**
+	 * Gets the amount of tasks that are added, but not yet run
+	 *
+	 * @return task backlog
+	 */
+	public long getBacklog() {
+		return Math.max(0L, this.totalAdded.get() - this.totalRun);
+	}
+
+	/**
+	 * Gets the total amount of tasks that have been added
+	 *
+	 * @return total added task count
+	 */
+	public long getTotalAdded() {
+		return this.totalAdded.get();
+	}
+
+	/**
+	 * Gets the total amount of tasks that have been run
+	 *
+	 * @return total run task count
+	 */
+	public long getTotalRun() {
+		return this.totalRun;
+	}
+
+	/**
+	 * Gets the amount of tasks added during the last measured second (20 ticks)
+	 *
+	 * @return tasks added per second
+	 */
+	public long getAddRate() {
+		return this.addRate;
+	}
+
+	private static class Node {
+		public final Runnable task;
+		public Node next;
+
+		public Node(Runnable task) {
+			this.task = task;
+		}
+	}
+}
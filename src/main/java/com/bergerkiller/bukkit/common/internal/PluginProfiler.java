@@ -0,0 +1,415 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.generator.BlockPopulator;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+
+import com.bergerkiller.bukkit.common.MessageBuilder;
+import com.bergerkiller.bukkit.common.proxies.EventExecutorProxy;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+
+/**
+ * Measures the time spent in the event listeners, packet listeners and next-tick tasks of every plugin.<br>
+ * Times are kept per handler in one-second buckets, so the time spent during the last few seconds or
+ * minutes can be obtained. Handlers are registered at all times, but only measure while profiling is enabled.
+ */
+public class PluginProfiler implements TimingsListener {
+	/**
+	 * Amount of seconds of measurements that are kept
+	 */
+	public static final int WINDOW = 300;
+	private final ConcurrentMap<String, Handler> handlers = new ConcurrentHashMap<String, Handler>();
+	private final Map<Class<?>, Handler> taskHandlers = new HashMap<Class<?>, Handler>();
+	private volatile boolean enabled = false;
+	private volatile boolean profileEvents = false;
+
+	/**
+	 * Gets whether handler execution times are measured
+	 *
+	 * @return True if enabled, False if not
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * Starts or stops measuring handler execution times
+	 *
+	 * @param enabled state to set to
+	 */
+	public void setEnabled(boolean enabled) {
+		if (this.enabled == enabled) {
+			return;
+		}
+		this.enabled = enabled;
+		if (enabled) {
+			CommonPlugin.getInstance().addTimingsListener(this);
+		} else {
+			CommonPlugin.getInstance().removeTimingsListener(this);
+		}
+	}
+
+	/**
+	 * Gets whether listeners registered by plugins are wrapped so that their event handlers can be measured.
+	 * This is the case while profiling is enabled, or when event profiling is enabled in the configuration.
+	 * Listeners registered while this is disabled are registered with Bukkit directly, and are never measured.
+	 *
+	 * @return True if listeners are registered for profiling, False if not
+	 */
+	public boolean isProfilingEvents() {
+		return this.profileEvents || this.enabled;
+	}
+
+	/**
+	 * Sets whether listeners registered by plugins are wrapped so that their event handlers can be measured.
+	 * The wrapper adds a small overhead to every event handler call, even while profiling is disabled.
+	 *
+	 * @param profileEvents state to set to
+	 */
+	public void setProfilingEvents(boolean profileEvents) {
+		this.profileEvents = profileEvents;
+	}
+
+	/**
+	 * Clears all the measured times
+	 */
+	public void reset() {
+		for (Handler handler : this.handlers.values()) {
+			handler.clear();
+		}
+	}
+
+	/**
+	 * Obtains the handler that measures the times of a single plugin handler
+	 *
+	 * @param plugin owning the handler, null if unknown
+	 * @param name of the handler
+	 * @return profiler handler
+	 */
+	public Handler getHandler(Plugin plugin, String name) {
+		final String pluginName = plugin == null ? "Unknown" : plugin.getName();
+		final String key = pluginName + ":" + name;
+		Handler handler = this.handlers.get(key);
+		if (handler == null) {
+			handler = new Handler(pluginName, name);
+			final Handler existing = this.handlers.putIfAbsent(key, handler);
+			if (existing != null) {
+				handler = existing;
+			}
+		}
+		return handler;
+	}
+
+	/**
+	 * Gets all the handlers that have been registered
+	 *
+	 * @return profiler handlers
+	 */
+	public Collection<Handler> getHandlers() {
+		return Collections.unmodifiableCollection(this.handlers.values());
+	}
+
+	/**
+	 * Gets the time spent per plugin during the last amount of seconds, most expensive plugin first
+	 *
+	 * @param seconds to get the time of, at most {@link #WINDOW}
+	 * @return time in nanoseconds per plugin name
+	 */
+	public Map<String, Long> getPluginTimes(int seconds) {
+		final Map<String, Long> times = new HashMap<String, Long>();
+		for (Handler handler : this.handlers.values()) {
+			final long time = handler.getTime(seconds);
+			if (time > 0) {
+				final Long total = times.get(handler.getPluginName());
+				times.put(handler.getPluginName(), (total == null ? 0L : total.longValue()) + time);
+			}
+		}
+		final List<Map.Entry<String, Long>> sorted = new ArrayList<Map.Entry<String, Long>>(times.entrySet());
+		Collections.sort(sorted, new Comparator<Map.Entry<String, Long>>() {
+			public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+				return o2.getValue().compareTo(o1.getValue());
+			}
+		});
+		final Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, Long> entry : sorted) {
+			result.put(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
+	/**
+	 * Registers all the event handlers of a listener, measuring the time spent in every handler
+	 *
+	 * @param listener to register
+	 * @param plugin owning the listener
+	 */
+	public void registerEvents(Listener listener, Plugin plugin) {
+		final Map<Class<? extends Event>, Set<RegisteredListener>> registered = plugin.getPluginLoader().createRegisteredListeners(listener, plugin);
+		final Map<Class<? extends Event>, HandlerList> handlerLists = new HashMap<Class<? extends Event>, HandlerList>();
+		for (Class<? extends Event> type : registered.keySet()) {
+			final HandlerList handlerList = getHandlerList(type);
+			if (handlerList == null) {
+				// Let Bukkit deal with it (and report the problem)
+				Bukkit.getPluginManager().registerEvents(listener, plugin);
+				return;
+			}
+			handlerLists.put(type, handlerList);
+		}
+		final String listenerName = getTypeName(listener.getClass());
+		for (Map.Entry<Class<? extends Event>, Set<RegisteredListener>> entry : registered.entrySet()) {
+			final Handler handler = getHandler(plugin, "event " + entry.getKey().getSimpleName() + " in " + listenerName);
+			final HandlerList handlerList = handlerLists.get(entry.getKey());
+			for (RegisteredListener original : entry.getValue()) {
+				handlerList.register(new RegisteredListener(listener, new ProfiledEventExecutor(original, handler),
+						original.getPriority(), plugin, original.isIgnoringCancelled()));
+			}
+		}
+	}
+
+	/**
+	 * Gets the name of a handler type to display, without the package.
+	 * Unlike the simple name, anonymous classes are named after their enclosing class.
+	 *
+	 * @param type of handler
+	 * @return display name
+	 */
+	public static String getTypeName(Class<?> type) {
+		final String name = type.getName();
+		return name.substring(name.lastIndexOf('.') + 1);
+	}
+
+	private static HandlerList getHandlerList(Class<?> type) {
+		while (type != null && Event.class.isAssignableFrom(type)) {
+			try {
+				final Method method = type.getDeclaredMethod("getHandlerList");
+				method.setAccessible(true);
+				return (HandlerList) method.invoke(null);
+			} catch (NoSuchMethodException ex) {
+				type = type.getSuperclass();
+			} catch (Throwable t) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void onNextTicked(Runnable runnable, long executionTime) {
+		final Class<?> type = runnable.getClass();
+		Handler handler = this.taskHandlers.get(type);
+		if (handler == null) {
+			handler = getHandler(CommonUtil.getPluginByClass(type), "next tick " + getTypeName(type));
+			this.taskHandlers.put(type, handler);
+		}
+		handler.add(executionTime);
+	}
+
+	public void onChunkLoad(Chunk chunk, long executionTime) {}
+	public void onChunkGenerate(Chunk chunk, long executionTime) {}
+	public void onChunkUnloading(World world, long executionTime) {}
+	public void onChunkPopulate(Chunk chunk, BlockPopulator populator, long executionTime) {}
+
+	/**
+	 * Sends the time spent per plugin and the most expensive handlers of every plugin to a command sender
+	 *
+	 * @param sender to send the times to
+	 * @param seconds to send the times of
+	 */
+	public void send(CommandSender sender, int seconds) {
+		seconds = Math.max(1, Math.min(WINDOW, seconds));
+		final Map<String, Long> pluginTimes = getPluginTimes(seconds);
+		MessageBuilder message = new MessageBuilder();
+		if (pluginTimes.isEmpty()) {
+			message.yellow("No plugin times have been measured in the last ", seconds, " seconds");
+			if (!this.enabled) {
+				message.yellow(" (profiling is disabled)");
+			}
+			message.send(sender);
+			return;
+		}
+		final List<Handler> sorted = new ArrayList<Handler>(this.handlers.values());
+		final int window = seconds;
+		Collections.sort(sorted, new Comparator<Handler>() {
+			public int compare(Handler o1, Handler o2) {
+				final long t1 = o1.getTime(window);
+				final long t2 = o2.getTime(window);
+				return t1 == t2 ? 0 : (t1 < t2 ? 1 : -1);
+			}
+		});
+		final double ticks = seconds * 20.0;
+		message.green("Plugin times of the last ", seconds, " seconds (ms per tick / % of a tick):");
+		for (Map.Entry<String, Long> entry : pluginTimes.entrySet()) {
+			message.newLine().yellow(entry.getKey(), ": ");
+			appendTime(message, entry.getValue(), ticks);
+			int shown = 0;
+			for (Handler handler : sorted) {
+				if (shown < 5 && handler.getPluginName().equals(entry.getKey()) && handler.getTime(seconds) > 0) {
+					message.newLine().white("  ", handler.getName(), ": ");
+					appendTime(message, handler.getTime(seconds), ticks);
+					message.gray(" (", handler.getCount(seconds), "x)");
+					shown++;
+				}
+			}
+		}
+		message.send(sender);
+	}
+
+	private static void appendTime(MessageBuilder message, long time, double ticks) {
+		final double perTick = time / ticks / 1E6;
+		message.white(MathUtil.round(perTick, 3), " / ", MathUtil.round(perTick * 2.0, 1), "%");
+	}
+
+	/**
+	 * Measures the execution times of a single handler of a plugin
+	 */
+	public static class Handler {
+		private final String pluginName;
+		private final String name;
+		private final long[] times = new long[WINDOW];
+		private final int[] counts = new int[WINDOW];
+		private long second = 0;
+
+		public Handler(String pluginName, String name) {
+			this.pluginName = pluginName;
+			this.name = name;
+		}
+
+		/**
+		 * Gets the name of the plugin owning the handler
+		 *
+		 * @return plugin name
+		 */
+		public String getPluginName() {
+			return this.pluginName;
+		}
+
+		/**
+		 * Gets the name of the handler
+		 *
+		 * @return handler name
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Adds a single execution time of the handler
+		 *
+		 * @param time in nanoseconds
+		 */
+		public synchronized void add(long time) {
+			final int index = advance();
+			this.times[index] += time;
+			this.counts[index]++;
+		}
+
+		/**
+		 * Gets the total time spent in the handler during the last amount of seconds
+		 *
+		 * @param seconds to get the time of, at most {@link PluginProfiler#WINDOW}
+		 * @return time in nanoseconds
+		 */
+		public synchronized long getTime(int seconds) {
+			int index = advance();
+			long total = 0;
+			for (int i = Math.min(seconds, WINDOW); i > 0; i--) {
+				total += this.times[index];
+				index = (index == 0 ? WINDOW : index) - 1;
+			}
+			return total;
+		}
+
+		/**
+		 * Gets the amount of times the handler ran during the last amount of seconds
+		 *
+		 * @param seconds to get the count of, at most {@link PluginProfiler#WINDOW}
+		 * @return execution count
+		 */
+		public synchronized long getCount(int seconds) {
+			int index = advance();
+			long total = 0;
+			for (int i = Math.min(seconds, WINDOW); i > 0; i--) {
+				total += this.counts[index];
+				index = (index == 0 ? WINDOW : index) - 1;
+			}
+			return total;
+		}
+
+		/**
+		 * Clears all measured times
+		 */
+		public synchronized void clear() {
+			for (int i = 0; i < WINDOW; i++) {
+				this.times[i] = 0;
+				this.counts[i] = 0;
+			}
+		}
+
+		/**
+		 * Moves on to the bucket of the current second, clearing the buckets of the seconds that passed
+		 *
+		 * @return index of the current bucket
+		 */
+		private int advance() {
+			final long now = System.currentTimeMillis() / 1000;
+			final long passed = Math.min(now - this.second, WINDOW);
+			for (long s = 1; s <= passed; s++) {
+				final int index = (int) ((this.second + s) % WINDOW);
+				this.times[index] = 0;
+				this.counts[index] = 0;
+			}
+			this.second = now;
+			return (int) (now % WINDOW);
+		}
+	}
+
+	private class ProfiledEventExecutor extends EventExecutorProxy {
+		private final Handler handler;
+
+		public ProfiledEventExecutor(final RegisteredListener original, Handler handler) {
+			super(new EventExecutor() {
+				public void execute(Listener listener, Event event) throws EventException {
+					original.callEvent(event);
+				}
+			});
+			this.handler = handler;
+		}
+
+		@Override
+		public void execute(Listener listener, Event event) throws EventException {
+			if (!enabled) {
+				base.execute(listener, event);
+				return;
+			}
+			final long startTime = System.nanoTime();
+			try {
+				base.execute(listener, event);
+			} finally {
+				this.handler.add(System.nanoTime() - startTime);
+			}
+		}
+	}
+}
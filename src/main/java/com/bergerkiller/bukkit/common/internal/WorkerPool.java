@@ -0,0 +1,393 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.Plugin;
+
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+
+/**
+ * A shared pool of worker threads that runs asynchronous tasks for all plugins.<br>
+ * Short tasks are queued in a bounded queue for a fixed amount of workers; when it is full, new tasks are rejected.
+ * Tasks that may block or run for a long time use an unbounded pool instead, so they can not starve the workers.
+ * Threads of the unbounded pool are not daemon threads, so they keep the server running until their task is done.
+ * Delayed tasks wait on a single timer thread and are handed to a pool once due,
+ * so waiting does not occupy a thread. The amount of tasks and time spent is counted per plugin.<br><br>
+ *
+ * Tasks that are dropped without running because the pool shuts down are notified
+ * if they implement {@link DroppableTask}.
+ */
+public class WorkerPool {
+	private static final String UNKNOWN_PLUGIN = "Unknown";
+	private final String name;
+	private final ThreadPoolExecutor workers;
+	private final ThreadPoolExecutor unbounded;
+	private final ScheduledThreadPoolExecutor timer;
+	private final Set<DelayedTask> delayed = Collections.newSetFromMap(new ConcurrentHashMap<DelayedTask, Boolean>());
+	private final ConcurrentMap<String, PluginStats> stats = new ConcurrentHashMap<String, PluginStats>();
+
+	/**
+	 * Initializes a new worker pool
+	 *
+	 * @param name prefix of the worker thread names
+	 * @param threads maximum amount of worker threads
+	 * @param queueCapacity maximum amount of tasks waiting for a worker
+	 */
+	public WorkerPool(String name, int threads, int queueCapacity) {
+		this.name = name;
+		this.workers = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory(name + "-Worker", true));
+		this.workers.allowCoreThreadTimeOut(true);
+		this.unbounded = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new NamedThreadFactory(name + "-Async", false));
+		this.timer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory(name + "-Timer", true));
+	}
+
+	/**
+	 * Gets the name of this worker pool
+	 *
+	 * @return pool name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Sets the maximum amount of worker threads
+	 *
+	 * @param threads to set to
+	 */
+	public void setThreadCount(int threads) {
+		threads = Math.max(1, threads);
+		if (threads > this.workers.getMaximumPoolSize()) {
+			this.workers.setMaximumPoolSize(threads);
+			this.workers.setCorePoolSize(threads);
+		} else {
+			this.workers.setCorePoolSize(threads);
+			this.workers.setMaximumPoolSize(threads);
+		}
+	}
+
+	/**
+	 * Gets the maximum amount of worker threads
+	 *
+	 * @return thread count
+	 */
+	public int getThreadCount() {
+		return this.workers.getMaximumPoolSize();
+	}
+
+	/**
+	 * Gets the amount of workers that are currently running a task
+	 *
+	 * @return active worker count
+	 */
+	public int getActiveCount() {
+		return this.workers.getActiveCount();
+	}
+
+	/**
+	 * Gets the amount of tasks waiting for a worker
+	 *
+	 * @return queued task count
+	 */
+	public int getQueueSize() {
+		return this.workers.getQueue().size();
+	}
+
+	/**
+	 * Gets whether this worker pool was shut down, and no longer accepts new tasks
+	 *
+	 * @return True if shut down, False if not
+	 */
+	public boolean isShutdown() {
+		return this.workers.isShutdown();
+	}
+
+	/**
+	 * Gets the amount of tasks, time spent and rejected tasks per plugin name
+	 *
+	 * @return plugin statistics
+	 */
+	public Map<String, PluginStats> getStats() {
+		return Collections.unmodifiableMap(this.stats);
+	}
+
+	private PluginStats getStats(Plugin plugin) {
+		final String pluginName = plugin == null ? UNKNOWN_PLUGIN : plugin.getName();
+		PluginStats pluginStats = this.stats.get(pluginName);
+		if (pluginStats == null) {
+			pluginStats = new PluginStats();
+			final PluginStats existing = this.stats.putIfAbsent(pluginName, pluginStats);
+			if (existing != null) {
+				pluginStats = existing;
+			}
+		}
+		return pluginStats;
+	}
+
+	/**
+	 * Runs a task on one of the worker threads
+	 *
+	 * @param plugin owning the task, null if unknown
+	 * @param task to run
+	 * @return True if the task was queued, False if the queue is full or the pool is shut down
+	 */
+	public boolean execute(Plugin plugin, Runnable task) {
+		final PluginStats pluginStats = getStats(plugin);
+		pluginStats.submitted.incrementAndGet();
+		try {
+			this.workers.execute(new AccountedTask(pluginStats, task));
+			return true;
+		} catch (RejectedExecutionException ex) {
+			pluginStats.submitted.decrementAndGet();
+			pluginStats.rejected.incrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * Runs a task that may block or run for a long time on a thread of the unbounded pool.
+	 * Idle threads of this pool are re-used, and stop after a minute of not being used.
+	 *
+	 * @param plugin owning the task, null if unknown
+	 * @param task to run
+	 * @return True if the task was started, False if the pool is shut down
+	 */
+	public boolean executeUnbounded(Plugin plugin, Runnable task) {
+		final PluginStats pluginStats = getStats(plugin);
+		pluginStats.submitted.incrementAndGet();
+		try {
+			this.unbounded.execute(new AccountedTask(pluginStats, task));
+			return true;
+		} catch (RejectedExecutionException ex) {
+			pluginStats.submitted.decrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * Runs a task on one of the worker threads after a delay.
+	 * If the queue is full once the delay has passed, the task is run on a thread of its own instead.
+	 *
+	 * @param plugin owning the task, null if unknown
+	 * @param task to run
+	 * @param delay in milliseconds
+	 * @return True if the task was scheduled, False if the pool is shut down
+	 */
+	public boolean schedule(Plugin plugin, Runnable task, long delay) {
+		return schedule(new DelayedTask(plugin, task, false), delay);
+	}
+
+	/**
+	 * Runs a task that may block or run for a long time on a thread of the unbounded pool after a delay
+	 *
+	 * @param plugin owning the task, null if unknown
+	 * @param task to run
+	 * @param delay in milliseconds
+	 * @return True if the task was scheduled, False if the pool is shut down
+	 */
+	public boolean scheduleUnbounded(Plugin plugin, Runnable task, long delay) {
+		return schedule(new DelayedTask(plugin, task, true), delay);
+	}
+
+	private boolean schedule(DelayedTask task, long delay) {
+		this.delayed.add(task);
+		try {
+			this.timer.schedule(task, Math.max(0L, delay), TimeUnit.MILLISECONDS);
+			return true;
+		} catch (RejectedExecutionException ex) {
+			this.delayed.remove(task);
+			return false;
+		}
+	}
+
+	/**
+	 * Stops accepting new tasks and waits a short while for the queued tasks of the workers to finish.
+	 * Tasks that are still queued after that, or that are waiting for their delay, are dropped.
+	 * Running tasks are never interrupted: they are left to finish on their own threads.
+	 */
+	public void shutdown() {
+		this.timer.shutdownNow();
+		for (DelayedTask task : this.delayed) {
+			if (this.delayed.remove(task)) {
+				dropped(task.task);
+			}
+		}
+		this.workers.shutdown();
+		this.unbounded.shutdown();
+		boolean finished;
+		try {
+			finished = this.workers.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException ex) {
+			finished = false;
+		}
+		if (!finished) {
+			final List<Runnable> dropped = new ArrayList<Runnable>();
+			this.workers.getQueue().drainTo(dropped);
+			for (Runnable task : dropped) {
+				dropped(task);
+			}
+			CommonPlugin.LOGGER.log(Level.WARNING, "Worker pool " + this.name + " tasks did not finish in time, " +
+					dropped.size() + " queued tasks were dropped and " + this.workers.getActiveCount() + " are still running");
+		}
+	}
+
+	private static void dropped(Runnable task) {
+		if (task instanceof DroppableTask) {
+			try {
+				((DroppableTask) task).onDropped();
+			} catch (Throwable t) {
+				CommonUtil.printFilteredStackTrace(t);
+			}
+		}
+	}
+
+	/**
+	 * A task that is notified when it is dropped without running, because the pool shut down
+	 */
+	public static interface DroppableTask extends Runnable {
+
+		/**
+		 * Called instead of {@link #run()} when this task will never run
+		 */
+		public void onDropped();
+	}
+
+	/**
+	 * Task counts and time spent of a single plugin
+	 */
+	public static class PluginStats {
+		private final AtomicLong submitted = new AtomicLong();
+		private final AtomicLong completed = new AtomicLong();
+		private final AtomicLong rejected = new AtomicLong();
+		private final AtomicLong time = new AtomicLong();
+
+		/**
+		 * Gets the total amount of tasks queued
+		 *
+		 * @return queued task count
+		 */
+		public long getSubmitted() {
+			return this.submitted.get();
+		}
+
+		/**
+		 * Gets the total amount of tasks that finished running
+		 *
+		 * @return completed task count
+		 */
+		public long getCompleted() {
+			return this.completed.get();
+		}
+
+		/**
+		 * Gets the total amount of tasks that could not be queued because the queue was full
+		 *
+		 * @return rejected task count
+		 */
+		public long getRejected() {
+			return this.rejected.get();
+		}
+
+		/**
+		 * Gets the total time spent running tasks
+		 *
+		 * @return time in nanoseconds
+		 */
+		public long getTime() {
+			return this.time.get();
+		}
+	}
+
+	private class DelayedTask implements Runnable {
+		private final Plugin plugin;
+		private final Runnable task;
+		private final boolean unbounded;
+
+		public DelayedTask(Plugin plugin, Runnable task, boolean unbounded) {
+			this.plugin = plugin;
+			this.task = task;
+			this.unbounded = unbounded;
+		}
+
+		@Override
+		public void run() {
+			if (!delayed.remove(this)) {
+				// Dropped by a shutdown
+				return;
+			}
+			if (this.unbounded ? executeUnbounded(this.plugin, this.task) : execute(this.plugin, this.task)) {
+				return;
+			}
+			if (workers.isShutdown()) {
+				dropped(this.task);
+			} else {
+				CommonPlugin.LOGGER.log(Level.WARNING, "Worker pool " + name + " is full, running a task of " +
+						(this.plugin == null ? UNKNOWN_PLUGIN : this.plugin.getName()) + " on its own thread");
+				new Thread(new AccountedTask(getStats(this.plugin), this.task), name + "-Overflow").start();
+			}
+		}
+	}
+
+	private static class AccountedTask implements DroppableTask {
+		private final PluginStats stats;
+		private final Runnable task;
+
+		public AccountedTask(PluginStats stats, Runnable task) {
+			this.stats = stats;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			final long startTime = System.nanoTime();
+			try {
+				this.task.run();
+			} catch (Throwable t) {
+				CommonUtil.printFilteredStackTrace(t);
+			}
+			this.stats.time.addAndGet(System.nanoTime() - startTime);
+			this.stats.completed.incrementAndGet();
+		}
+
+		@Override
+		public void onDropped() {
+			dropped(this.task);
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final boolean daemon;
+		private final AtomicInteger counter = new AtomicInteger();
+
+		public NamedThreadFactory(String prefix, boolean daemon) {
+			this.prefix = prefix;
+			this.daemon = daemon;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			final Thread thread = new Thread(runnable, this.prefix + "-" + this.counter.incrementAndGet());
+			thread.setDaemon(this.daemon);
+			return thread;
+		}
+	}
+}
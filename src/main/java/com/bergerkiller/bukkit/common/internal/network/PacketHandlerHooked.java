@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -14,7 +15,9 @@ import org.bukkit.plugin.Plugin;
 import com.bergerkiller.bukkit.common.conversion.Conversion;
 import com.bergerkiller.bukkit.common.events.PacketReceiveEvent;
 import com.bergerkiller.bukkit.common.events.PacketSendEvent;
+import com.bergerkiller.bukkit.common.internal.CommonPlugin;
 import com.bergerkiller.bukkit.common.internal.PacketHandler;
+import com.bergerkiller.bukkit.common.internal.PluginProfiler;
 import com.bergerkiller.bukkit.common.protocol.CommonPacket;
 import com.bergerkiller.bukkit.common.protocol.PacketFields;
 import com.bergerkiller.bukkit.common.protocol.PacketListener;
@@ -32,78 +35,58 @@ import com.bergerkiller.bukkit.common.utils.PlayerUtil;
  */
 public abstract class PacketHandlerHooked implements PacketHandler {
 	@SuppressWarnings("unchecked")
-	private final List<PacketListener>[] listeners = new ArrayList[256];
+	private final List<Registration<PacketListener>>[] listeners = new ArrayList[256];
 	@SuppressWarnings("unchecked")
-	private final List<PacketMonitor>[] monitors = new ArrayList[256];
+	private final List<Registration<PacketMonitor>>[] monitors = new ArrayList[256];
 	private final Map<Plugin, List<PacketListener>> listenerPlugins = new HashMap<Plugin, List<PacketListener>>();
 	private final Map<Plugin, List<PacketMonitor>> monitorPlugins = new HashMap<Plugin, List<PacketMonitor>>();
 
 	@Override
 	public void removePacketListeners(Plugin plugin) {
 		// Listeners
-		List<PacketListener> listeners = listenerPlugins.get(plugin);
+		List<PacketListener> listeners = listenerPlugins.remove(plugin);
 		if (listeners != null) {
 			for (PacketListener listener : listeners) {
-				removePacketListener(listener, false);
+				unregister(this.listeners, listener, plugin);
 			}
 		}
 		// Monitors
-		List<PacketMonitor> monitors = monitorPlugins.get(plugin);
+		List<PacketMonitor> monitors = monitorPlugins.remove(plugin);
 		if (monitors != null) {
 			for (PacketMonitor monitor : monitors) {
-				removePacketMonitor(monitor, false);
+				unregister(this.monitors, monitor, plugin);
 			}
 		}
 	}
 
 	@Override
 	public void removePacketMonitor(PacketMonitor monitor) {
-		removePacketMonitor(monitor, true);
-	}
-
-	private void removePacketMonitor(PacketMonitor monitor, boolean fromPlugins) {
 		if (monitor == null) {
 			return;
 		}
-		for(int i = 0; i < monitors.length; i++) {
-			if (!LogicUtil.nullOrEmpty(monitors[i])) {
-				monitors[i].remove(monitor);
-			}
-		}
-		if (fromPlugins) {
-			// Remove from plugin list
-			for (Plugin plugin : monitorPlugins.keySet().toArray(new Plugin[0])) {
-				List<PacketMonitor> list = monitorPlugins.get(plugin);
-				// If not null, remove the monitor, if empty afterwards remove the entire entry
-				if (list != null && list.remove(monitor) && list.isEmpty()) {
-					monitorPlugins.remove(plugin);
-				}
+		unregister(monitors, monitor, null);
+		// Remove from plugin list
+		for (Plugin plugin : monitorPlugins.keySet().toArray(new Plugin[0])) {
+			List<PacketMonitor> list = monitorPlugins.get(plugin);
+			// If not null, remove the monitor, if empty afterwards remove the entire entry
+			if (list != null && list.remove(monitor) && list.isEmpty()) {
+				monitorPlugins.remove(plugin);
 			}
 		}
 	}
 
 	@Override
 	public void removePacketListener(PacketListener listener) {
-		removePacketListener(listener, true);
-	}
-
-	private void removePacketListener(PacketListener listener, boolean fromPlugins) {
 		if (listener == null) {
 			return;
 		}
-		for(int i = 0; i < listeners.length; i++) {
-			if (!LogicUtil.nullOrEmpty(listeners[i])) {
-				listeners[i].remove(listener);
-			}
-		}
-		if (fromPlugins) {
-			// Remove from plugin list
-			for (Plugin plugin : listenerPlugins.keySet().toArray(new Plugin[0])) {
-				List<PacketListener> list = listenerPlugins.get(plugin);
-				// If not null, remove the listener, if empty afterwards remove the entire entry
-				if (list != null && list.remove(listener) && list.isEmpty()) {
-					listenerPlugins.remove(plugin);
-				}
+		unregister(listeners, listener, null);
+		// Remove from plugin list
+		for (Plugin plugin : listenerPlugins.keySet().toArray(new Plugin[0])) {
+			List<PacketListener> list = listenerPlugins.get(plugin);
+			// If not null, remove the listener, if empty afterwards remove the entire entry
+			if (list != null && list.remove(listener) && list.isEmpty()) {
+				listenerPlugins.remove(plugin);
 			}
 		}
 	}
@@ -115,25 +98,16 @@ public abstract class PacketHandlerHooked implements PacketHandler {
 		} else if (plugin == null) {
 			throw new IllegalArgumentException("Plugin is not allowed to be null");
 		}
-		// Register the listener
-		for (int id : ids) {
-			if (id == -1) {
-				continue;
-			}
-			if (id < 0 || id >= monitors.length) {
-				throw new IllegalArgumentException("Unknown packet type Id: " + id);
-			}
-			// Map to listener array
-			if (monitors[id] == null) {
-				monitors[id] = new ArrayList<PacketMonitor>();
-			}
-			monitors[id].add(monitor);
-			// Map to plugin list
-			List<PacketMonitor> list = monitorPlugins.get(plugin);
-			if (list == null) {
-				list = new ArrayList<PacketMonitor>(2);
-				monitorPlugins.put(plugin, list);
-			}
+		// Register the monitor
+		final String name = "packet monitor " + PluginProfiler.getTypeName(monitor.getClass());
+		register(monitors, new Registration<PacketMonitor>(plugin, monitor, CommonPlugin.PROFILER.getHandler(plugin, name)), ids);
+		// Map to plugin list
+		List<PacketMonitor> list = monitorPlugins.get(plugin);
+		if (list == null) {
+			list = new ArrayList<PacketMonitor>(2);
+			monitorPlugins.put(plugin, list);
+		}
+		if (!list.contains(monitor)) {
 			list.add(monitor);
 		}
 	}
@@ -146,25 +120,53 @@ public abstract class PacketHandlerHooked implements PacketHandler {
 			throw new IllegalArgumentException("Plugin is not allowed to be null");
 		}
 		// Register the listener
+		final String name = "packet listener " + PluginProfiler.getTypeName(listener.getClass());
+		register(listeners, new Registration<PacketListener>(plugin, listener, CommonPlugin.PROFILER.getHandler(plugin, name)), ids);
+		// Map to plugin list
+		List<PacketListener> list = listenerPlugins.get(plugin);
+		if (list == null) {
+			list = new ArrayList<PacketListener>(2);
+			listenerPlugins.put(plugin, list);
+		}
+		if (!list.contains(listener)) {
+			list.add(listener);
+		}
+	}
+
+	private static <T> void register(List<Registration<T>>[] registrations, Registration<T> registration, int[] ids) {
 		for (int id : ids) {
 			if (id == -1) {
 				continue;
 			}
-			if (id < 0 || id >= listeners.length) {
+			if (id < 0 || id >= registrations.length) {
 				throw new IllegalArgumentException("Unknown packet type Id: " + id);
 			}
-			// Map to listener array
-			if (listeners[id] == null) {
-				listeners[id] = new ArrayList<PacketListener>();
+			// Map to registration array
+			if (registrations[id] == null) {
+				registrations[id] = new ArrayList<Registration<T>>();
 			}
-			listeners[id].add(listener);
-			// Map to plugin list
-			List<PacketListener> list = listenerPlugins.get(plugin);
-			if (list == null) {
-				list = new ArrayList<PacketListener>(2);
-				listenerPlugins.put(plugin, list);
+			registrations[id].add(registration);
+		}
+	}
+
+	/**
+	 * Removes the registrations of a listener or monitor for all packet types
+	 * 
+	 * @param registrations to remove from
+	 * @param handler to remove
+	 * @param plugin to remove the registrations of, null to remove those of all plugins
+	 */
+	private static <T> void unregister(List<Registration<T>>[] registrations, T handler, Plugin plugin) {
+		for (List<Registration<T>> list : registrations) {
+			if (LogicUtil.nullOrEmpty(list)) {
+				continue;
+			}
+			Iterator<Registration<T>> iter = list.iterator();
+			while (iter.hasNext()) {
+				if (iter.next().isFor(handler, plugin)) {
+					iter.remove();
+				}
 			}
-			list.add(listener);
 		}
 	}
 
@@ -199,17 +201,14 @@ public abstract class PacketHandlerHooked implements PacketHandler {
 		if (!LogicUtil.isInBounds(listeners, id)) {
 			return Collections.emptySet();
 		}
-		List<PacketListener> list = listeners[id];
+		List<Registration<PacketListener>> list = listeners[id];
 		if (LogicUtil.nullOrEmpty(list)) {
 			return Collections.emptySet();
 		}
 		List<Plugin> plugins = new ArrayList<Plugin>();
-		for (Entry<Plugin, List<PacketListener>> entry : listenerPlugins.entrySet()) {
-			for (PacketListener listener : list) {
-				if (entry.getValue().contains(listener)) {
-					plugins.add(entry.getKey());
-					break;
-				}
+		for (Registration<PacketListener> registration : list) {
+			if (!plugins.contains(registration.plugin)) {
+				plugins.add(registration.plugin);
 			}
 		}
 		return plugins;
@@ -219,31 +218,26 @@ public abstract class PacketHandlerHooked implements PacketHandler {
 	public void transfer(PacketHandler to) {
 		for (Entry<Plugin, List<PacketListener>> entry : listenerPlugins.entrySet()) {
 			for (PacketListener listener : entry.getValue()) {
-				to.addPacketListener(entry.getKey(), listener, getListenerIds(listener));
+				to.addPacketListener(entry.getKey(), listener, getIds(listeners, listener, entry.getKey()));
 			}
 		}
 		for (Entry<Plugin, List<PacketMonitor>> entry : monitorPlugins.entrySet()) {
 			for (PacketMonitor listener : entry.getValue()) {
-				to.addPacketMonitor(entry.getKey(), listener, getMonitorIds(listener));
+				to.addPacketMonitor(entry.getKey(), listener, getIds(monitors, listener, entry.getKey()));
 			}
 		}
 	}
 
-	private int[] getListenerIds(PacketListener listener) {
+	private static <T> int[] getIds(List<Registration<T>>[] registrations, T handler, Plugin plugin) {
 		ArrayList<Integer> list = new ArrayList<Integer>();
-		for (int i = 0; i < listeners.length; i++) {
-			if (listeners[i] != null && listeners[i].contains(listener)) {
-				list.add(i);
-			}
-		}
-		return Conversion.toIntArr.convert(list);
-	}
-
-	private int[] getMonitorIds(PacketMonitor listener) {
-		ArrayList<Integer> list = new ArrayList<Integer>();
-		for (int i = 0; i < monitors.length; i++) {
-			if (monitors[i] != null && monitors[i].contains(listener)) {
-				list.add(i);
+		for (int i = 0; i < registrations.length; i++) {
+			if (registrations[i] != null) {
+				for (Registration<T> registration : registrations[i]) {
+					if (registration.isFor(handler, plugin)) {
+						list.add(i);
+						break;
+					}
+				}
 			}
 		}
 		return Conversion.toIntArr.convert(list);
@@ -259,8 +253,17 @@ public abstract class PacketHandlerHooked implements PacketHandler {
 			CommonPacket cp = new CommonPacket(packet, id);
 			PacketSendEvent ev = new PacketSendEvent(player, cp);
 			ev.setCancelled(wasCancelled);
-			for (PacketListener listener : listeners[id]) {
-				listener.onPacketSend(ev);
+			for (Registration<PacketListener> registration : listeners[id]) {
+				if (CommonPlugin.PROFILER.isEnabled()) {
+					final long startTime = System.nanoTime();
+					try {
+						registration.handler.onPacketSend(ev);
+					} finally {
+						registration.profile.add(System.nanoTime() - startTime);
+					}
+				} else {
+					registration.handler.onPacketSend(ev);
+				}
 			}
 			if (ev.isCancelled()) {
 				return false;
@@ -274,8 +277,17 @@ public abstract class PacketHandlerHooked implements PacketHandler {
 	private void handlePacketSendMonitor(Player player, int packetId, Object packet) {
 		if (!LogicUtil.nullOrEmpty(monitors[packetId])) {
 			CommonPacket cp = new CommonPacket(packet, packetId);
-			for (PacketMonitor monitor : monitors[packetId]) {
-				monitor.onMonitorPacketSend(cp, player);
+			for (Registration<PacketMonitor> registration : monitors[packetId]) {
+				if (CommonPlugin.PROFILER.isEnabled()) {
+					final long startTime = System.nanoTime();
+					try {
+						registration.handler.onMonitorPacketSend(cp, player);
+					} finally {
+						registration.profile.add(System.nanoTime() - startTime);
+					}
+				} else {
+					registration.handler.onMonitorPacketSend(cp, player);
+				}
 			}
 		}
 	}
@@ -290,8 +302,17 @@ public abstract class PacketHandlerHooked implements PacketHandler {
 			CommonPacket cp = new CommonPacket(packet, id);
 			PacketReceiveEvent ev = new PacketReceiveEvent(player, cp);
 			ev.setCancelled(wasCancelled);
-			for (PacketListener listener : listeners[id]) {
-				listener.onPacketReceive(ev);
+			for (Registration<PacketListener> registration : listeners[id]) {
+				if (CommonPlugin.PROFILER.isEnabled()) {
+					final long startTime = System.nanoTime();
+					try {
+						registration.handler.onPacketReceive(ev);
+					} finally {
+						registration.profile.add(System.nanoTime() - startTime);
+					}
+				} else {
+					registration.handler.onPacketReceive(ev);
+				}
 			}
 			if (ev.isCancelled()) {
 				return false;
@@ -300,10 +321,38 @@ public abstract class PacketHandlerHooked implements PacketHandler {
 		// Handle monitors
 		if (!LogicUtil.nullOrEmpty(monitors[id])) {
 			CommonPacket cp = new CommonPacket(packet, id);
-			for (PacketMonitor monitor : monitors[id]) {
-				monitor.onMonitorPacketReceive(cp, player);
+			for (Registration<PacketMonitor> registration : monitors[id]) {
+				if (CommonPlugin.PROFILER.isEnabled()) {
+					final long startTime = System.nanoTime();
+					try {
+						registration.handler.onMonitorPacketReceive(cp, player);
+					} finally {
+						registration.profile.add(System.nanoTime() - startTime);
+					}
+				} else {
+					registration.handler.onMonitorPacketReceive(cp, player);
+				}
 			}
 		}
 		return true;
 	}
+
+	/**
+	 * A listener or monitor registered by a plugin, with the profiler handler its time is added to
+	 */
+	private static class Registration<T> {
+		public final Plugin plugin;
+		public final T handler;
+		public final PluginProfiler.Handler profile;
+
+		public Registration(Plugin plugin, T handler, PluginProfiler.Handler profile) {
+			this.plugin = plugin;
+			this.handler = handler;
+			this.profile = profile;
+		}
+
+		public boolean isFor(T handler, Plugin plugin) {
+			return this.handler.equals(handler) && (plugin == null || this.plugin == plugin);
+		}
+	}
 }
@@ -0,0 +1,42 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count that can be incremented from any thread without locking
+ */
+public class Counter {
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * Increments the count by one
+	 */
+	public void increment() {
+		this.count.incrementAndGet();
+	}
+
+	/**
+	 * Adds an amount to the count
+	 *
+	 * @param amount to add
+	 */
+	public void add(long amount) {
+		this.count.addAndGet(amount);
+	}
+
+	/**
+	 * Gets the current count
+	 *
+	 * @return count
+	 */
+	public long get() {
+		return this.count.get();
+	}
+
+	/**
+	 * Sets the count back to 0
+	 */
+	public void reset() {
+		this.count.set(0);
+	}
+}
@@ -0,0 +1,191 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Exports metrics to files in a local folder, in one of two formats:<br>
+ * - {@link Format#JSON_LINES}: appends one JSON object per export to a file per day
+ * (<i>metrics-yyyy-MM-dd.jsonl</i>). Files older than the amount of days to keep are deleted.<br>
+ * - {@link Format#PROMETHEUS}: replaces <i>metrics.prom</i> with the latest values in the Prometheus
+ * text format, which can be picked up by a textfile collector.
+ */
+public class FileMetricsExporter implements MetricsExporter {
+	private static final long DAY = 24L * 60L * 60L * 1000L;
+	private final File folder;
+	private final Format format;
+	private final int keepDays;
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+	private String lastDate = null;
+
+	/**
+	 * Initializes a new file metrics exporter
+	 *
+	 * @param folder to write the files to
+	 * @param format to write in
+	 * @param keepDays amount of days JSON lines files are kept, 0 to keep them forever
+	 */
+	public FileMetricsExporter(File folder, Format format, int keepDays) {
+		this.folder = folder;
+		this.format = format;
+		this.keepDays = keepDays;
+	}
+
+	/**
+	 * Gets the folder the files are written to
+	 *
+	 * @return metrics folder
+	 */
+	public File getFolder() {
+		return this.folder;
+	}
+
+	/**
+	 * Gets the format the files are written in
+	 *
+	 * @return file format
+	 */
+	public Format getFormat() {
+		return this.format;
+	}
+
+	@Override
+	public void export(long time, Map<String, Double> values) throws IOException {
+		this.folder.mkdirs();
+		if (this.format == Format.PROMETHEUS) {
+			exportPrometheus(time, values);
+		} else {
+			exportJsonLine(time, values);
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+
+	private void exportJsonLine(long time, Map<String, Double> values) throws IOException {
+		final String date = this.dateFormat.format(new Date(time));
+		if (!date.equals(this.lastDate)) {
+			this.lastDate = date;
+			deleteOldFiles(time);
+		}
+		final StringBuilder line = new StringBuilder(values.size() * 40 + 40);
+		line.append("{\"time\":").append(time).append(",\"metrics\":{");
+		boolean first = true;
+		for (Map.Entry<String, Double> entry : values.entrySet()) {
+			if (entry.getValue().isNaN() || entry.getValue().isInfinite()) {
+				continue;
+			}
+			if (first) {
+				first = false;
+			} else {
+				line.append(',');
+			}
+			appendJsonString(line, entry.getKey());
+			line.append(':').append(entry.getValue().doubleValue());
+		}
+		line.append("}}");
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(new File(this.folder, "metrics-" + date + ".jsonl"), true));
+		try {
+			writer.write(line.toString());
+			writer.newLine();
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void exportPrometheus(long time, Map<String, Double> values) throws IOException {
+		// Write to a temporary file first, so a collector never reads a half-written file
+		final File tmpFile = new File(this.folder, "metrics.prom.tmp");
+		final File file = new File(this.folder, "metrics.prom");
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(tmpFile));
+		try {
+			for (Map.Entry<String, Double> entry : values.entrySet()) {
+				final String name = toPrometheusName(entry.getKey());
+				writer.write("# TYPE " + name + " gauge");
+				writer.newLine();
+				writer.write(name + " " + formatPrometheusValue(entry.getValue().doubleValue()));
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+		if (!tmpFile.renameTo(file)) {
+			// Some platforms do not rename over an existing file
+			file.delete();
+			if (!tmpFile.renameTo(file)) {
+				throw new IOException("Failed to replace " + file);
+			}
+		}
+	}
+
+	private void deleteOldFiles(long time) {
+		if (this.keepDays <= 0) {
+			return;
+		}
+		final File[] files = this.folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		final String oldest = "metrics-" + this.dateFormat.format(new Date(time - this.keepDays * DAY)) + ".jsonl";
+		for (File file : files) {
+			final String name = file.getName();
+			if (name.startsWith("metrics-") && name.endsWith(".jsonl") && name.compareTo(oldest) < 0) {
+				file.delete();
+			}
+		}
+	}
+
+	private static void appendJsonString(StringBuilder builder, String text) {
+		builder.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c < ' ') {
+				builder.append(String.format("\\u%04x", (int) c));
+			} else {
+				builder.append(c);
+			}
+		}
+		builder.append('"');
+	}
+
+	private static String toPrometheusName(String name) {
+		final StringBuilder builder = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			final char c = name.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':' || (c >= '0' && c <= '9' && i > 0)) {
+				builder.append(c);
+			} else {
+				builder.append('_');
+			}
+		}
+		return builder.toString();
+	}
+
+	private static String formatPrometheusValue(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		} else if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		} else {
+			return Double.toString(value);
+		}
+	}
+
+	/**
+	 * The file format metrics are exported in
+	 */
+	public static enum Format {
+		/** One JSON object per line, in a file per day */
+		JSON_LINES,
+		/** Prometheus text exposition format, latest values only */
+		PROMETHEUS;
+	}
+}
@@ -0,0 +1,16 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+/**
+ * A value that is read from its source every time it is requested,
+ * for example the size of a queue
+ */
+public interface Gauge {
+
+	/**
+	 * Reads the current value of this gauge.
+	 * This may be called from any thread.
+	 *
+	 * @return current value
+	 */
+	double getValue();
+}
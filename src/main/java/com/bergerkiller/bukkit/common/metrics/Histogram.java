@@ -0,0 +1,74 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log-linear histogram of values that can be recorded from any thread.<br>
+ * Recording a value does not lock and does not allocate. Snapshots use the same bucket layout
+ * as {@link TimingStatistic}, so snapshots of multiple histograms can be merged and queried for percentiles.
+ */
+public class Histogram {
+	private final AtomicLongArray buckets = new AtomicLongArray(TimingStatistic.BUCKET_COUNT);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a single value
+	 *
+	 * @param value to record, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		this.buckets.incrementAndGet(TimingStatistic.getBucket(value));
+		this.total.addAndGet(value);
+		long current = this.min.get();
+		while (value < current && !this.min.compareAndSet(current, value)) {
+			current = this.min.get();
+		}
+		current = this.max.get();
+		while (value > current && !this.max.compareAndSet(current, value)) {
+			current = this.max.get();
+		}
+	}
+
+	/**
+	 * Obtains a snapshot of all the values recorded so far.
+	 * Values recorded while the snapshot is taken may be partially included.
+	 *
+	 * @return snapshot statistic
+	 */
+	public TimingStatistic getSnapshot() {
+		final TimingStatistic snapshot = new TimingStatistic();
+		addTo(snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Adds all the values recorded so far to a statistic, merging them with the values already in it
+	 *
+	 * @param statistic to add to
+	 */
+	public void addTo(TimingStatistic statistic) {
+		final long[] counts = new long[TimingStatistic.BUCKET_COUNT];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = this.buckets.get(i);
+		}
+		statistic.add(counts, this.total.get(), this.min.get(), this.max.get());
+	}
+
+	/**
+	 * Clears all the values recorded so far
+	 */
+	public void reset() {
+		for (int i = 0; i < TimingStatistic.BUCKET_COUNT; i++) {
+			this.buckets.set(i, 0);
+		}
+		this.total.set(0);
+		this.min.set(Long.MAX_VALUE);
+		this.max.set(0);
+	}
+}
@@ -49,7 +49,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
@@ -205,6 +207,32 @@ public class Metrics {
 		}
 	}
 
+	/**
+	 * Updates all graphs and reads the numeric values of their plotters.
+	 * Plotters of which the value is not a number are skipped.
+	 * This has to be called on the main thread.
+	 *
+	 * @return plotter values, mapped by graph name and plotter name separated with a dot
+	 */
+	public Map<String, Double> getPlotterValues() {
+		final List<Graph> graphBuffer;
+		synchronized (graphs) {
+			graphBuffer = new ArrayList<Graph>(graphs);
+		}
+		final Map<String, Double> values = new LinkedHashMap<String, Double>();
+		for (Graph graph : graphBuffer) {
+			graph.onUpdate(plugin);
+			for (Entry<String, Object> entry : graph.getPlotters().entrySet()) {
+				try {
+					values.put(graph.getName() + "." + entry.getKey(), Double.parseDouble(String.valueOf(entry.getValue())));
+				} catch (NumberFormatException ex) {
+					// Not a numeric plotter
+				}
+			}
+		}
+		return values;
+	}
+
 	/**
 	 * Start measuring statistics. This will immediately create an updating thread, 
 	 * immediately sending initial data to the metrics backend, and then after that 
@@ -0,0 +1,26 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes periodically collected metric values to a destination.
+ * Exporters are called on a worker thread, one export at a time.
+ */
+public interface MetricsExporter {
+
+	/**
+	 * Exports the values collected at a single moment
+	 *
+	 * @param time at which the values were collected (milliseconds since epoch)
+	 * @param values to export, mapped by metric name and sorted by name
+	 * @throws IOException if writing failed
+	 */
+	void export(long time, Map<String, Double> values) throws IOException;
+
+	/**
+	 * Closes this exporter, releasing any resources it holds.
+	 * No more exports happen afterwards.
+	 */
+	void close();
+}
@@ -0,0 +1,138 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stores named timers, counters and gauges.<br>
+ * Look up a metric once and keep the instance around, recording into it is cheap and thread-safe.
+ * Names are dot-separated and should start with the plugin name, for example <i>myplugin.save.time</i>.
+ */
+public class MetricsRegistry {
+	private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * Obtains the timer with the name given, creating it if it does not yet exist
+	 *
+	 * @param name of the timer
+	 * @return timer
+	 * @throws IllegalArgumentException if a metric of a different type is registered using the name
+	 */
+	public Timer getTimer(String name) {
+		return get(name, Timer.class);
+	}
+
+	/**
+	 * Obtains the counter with the name given, creating it if it does not yet exist
+	 *
+	 * @param name of the counter
+	 * @return counter
+	 * @throws IllegalArgumentException if a metric of a different type is registered using the name
+	 */
+	public Counter getCounter(String name) {
+		return get(name, Counter.class);
+	}
+
+	/**
+	 * Registers a gauge, replacing any gauge previously registered using the name
+	 *
+	 * @param name of the gauge
+	 * @param gauge to register
+	 * @throws IllegalArgumentException if a metric of a different type is registered using the name
+	 */
+	public void registerGauge(String name, Gauge gauge) {
+		if (gauge == null) {
+			throw new IllegalArgumentException("Gauge is not allowed to be null");
+		}
+		final Object old = this.metrics.get(name);
+		if (old != null && !(old instanceof Gauge)) {
+			throw new IllegalArgumentException("Metric '" + name + "' is not a gauge");
+		}
+		this.metrics.put(name, gauge);
+	}
+
+	/**
+	 * Removes a metric
+	 *
+	 * @param name of the metric to remove
+	 * @return True if removed, False if no metric was registered using the name
+	 */
+	public boolean remove(String name) {
+		return this.metrics.remove(name) != null;
+	}
+
+	/**
+	 * Removes all metrics of which the name starts with a prefix,
+	 * for example to remove the metrics of a plugin that disables
+	 *
+	 * @param prefix of the metric names, such as <i>myplugin.</i>
+	 */
+	public void removeAll(String prefix) {
+		for (String name : this.metrics.keySet()) {
+			if (name.startsWith(prefix)) {
+				this.metrics.remove(name);
+			}
+		}
+	}
+
+	/**
+	 * Gets all the timers, sorted by name
+	 *
+	 * @return timers
+	 */
+	public SortedMap<String, Timer> getTimers() {
+		return getAll(Timer.class);
+	}
+
+	/**
+	 * Gets all the counters, sorted by name
+	 *
+	 * @return counters
+	 */
+	public SortedMap<String, Counter> getCounters() {
+		return getAll(Counter.class);
+	}
+
+	/**
+	 * Gets all the gauges, sorted by name
+	 *
+	 * @return gauges
+	 */
+	public SortedMap<String, Gauge> getGauges() {
+		return getAll(Gauge.class);
+	}
+
+	private <T> T get(String name, Class<T> type) {
+		Object metric = this.metrics.get(name);
+		if (metric == null) {
+			try {
+				metric = type.newInstance();
+			} catch (Exception ex) {
+				throw new RuntimeException("Failed to create metric '" + name + "'", ex);
+			}
+			final Object existing = this.metrics.putIfAbsent(name, metric);
+			if (existing != null) {
+				metric = existing;
+			}
+		}
+		if (!type.isInstance(metric)) {
+			throw new IllegalArgumentException("Metric '" + name + "' is not a " + type.getSimpleName().toLowerCase(Locale.ENGLISH));
+		}
+		return type.cast(metric);
+	}
+
+	private <T> SortedMap<String, T> getAll(Class<T> type) {
+		final SortedMap<String, T> result = new TreeMap<String, T>();
+		for (Map.Entry<String, Object> entry : this.metrics.entrySet()) {
+			if (type.isInstance(entry.getValue())) {
+				result.put(entry.getKey(), type.cast(entry.getValue()));
+			}
+		}
+		return Collections.unmodifiableSortedMap(result);
+	}
+}
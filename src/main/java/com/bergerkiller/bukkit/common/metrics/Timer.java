@@ -0,0 +1,38 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+/**
+ * A histogram of execution times in nanoseconds. Measure a section of code as follows:<br>
+ * <pre>
+ * final long startTime = System.nanoTime();
+ * // Code to measure
+ * timer.stop(startTime);
+ * </pre>
+ */
+public class Timer extends Histogram {
+
+	/**
+	 * Records the time elapsed since a start time obtained using {@link System#nanoTime()}
+	 *
+	 * @param startTime of the measurement
+	 * @return the time elapsed (nanoseconds)
+	 */
+	public long stop(long startTime) {
+		final long time = System.nanoTime() - startTime;
+		this.record(time);
+		return time;
+	}
+
+	/**
+	 * Runs a task and records the time it took to run
+	 *
+	 * @param task to run
+	 */
+	public void time(Runnable task) {
+		final long startTime = System.nanoTime();
+		try {
+			task.run();
+		} finally {
+			this.stop(startTime);
+		}
+	}
+}
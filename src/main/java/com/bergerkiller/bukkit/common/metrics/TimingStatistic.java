@@ -0,0 +1,201 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+/**
+ * Accumulates execution time samples (in nanoseconds) into a count, total, minimum, maximum
+ * and a fixed-size log-linear histogram, from which percentiles can be estimated.<br>
+ * Adding a sample never allocates. This class is not thread-safe.<br><br>
+ *
+ * Snapshots of a {@link Histogram} or {@link Timer} are returned as a statistic.
+ */
+public class TimingStatistic {
+	/**
+	 * Amount of linear sub-buckets for every power of two
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	/**
+	 * Amount of histogram buckets a statistic consists of
+	 */
+	public static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+	private final long[] buckets = new long[BUCKET_COUNT];
+	private long count;
+	private long total;
+	private long min;
+	private long max;
+
+	public TimingStatistic() {
+		this.reset();
+	}
+
+	/**
+	 * Adds a single execution time sample
+	 *
+	 * @param executionTime to add (nanoseconds)
+	 */
+	public void add(long executionTime) {
+		if (executionTime < 0) {
+			executionTime = 0;
+		}
+		this.buckets[getBucket(executionTime)]++;
+		this.count++;
+		this.total += executionTime;
+		if (executionTime < this.min) {
+			this.min = executionTime;
+		}
+		if (executionTime > this.max) {
+			this.max = executionTime;
+		}
+	}
+
+	/**
+	 * Adds all the samples contained in another statistic to this statistic
+	 *
+	 * @param statistic to add
+	 */
+	public void add(TimingStatistic statistic) {
+		if (statistic.count == 0) {
+			return;
+		}
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.buckets[i] += statistic.buckets[i];
+		}
+		this.count += statistic.count;
+		this.total += statistic.total;
+		this.min = Math.min(this.min, statistic.min);
+		this.max = Math.max(this.max, statistic.max);
+	}
+
+	/**
+	 * Adds samples recorded elsewhere as histogram bucket counts.
+	 * The bucket of a sample is obtained using {@link #getBucket(long)}.
+	 *
+	 * @param buckets counts, {@link #BUCKET_COUNT} in length
+	 * @param total of all the samples (nanoseconds)
+	 * @param min sample (nanoseconds)
+	 * @param max sample (nanoseconds)
+	 */
+	public void add(long[] buckets, long total, long min, long max) {
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.buckets[i] += buckets[i];
+			count += buckets[i];
+		}
+		if (count == 0) {
+			return;
+		}
+		this.count += count;
+		this.total += total;
+		this.min = Math.min(this.min, min);
+		this.max = Math.max(this.max, max);
+	}
+
+	/**
+	 * Clears all samples stored in this statistic
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.buckets[i] = 0;
+		}
+		this.count = 0;
+		this.total = 0;
+		this.min = Long.MAX_VALUE;
+		this.max = 0;
+	}
+
+	/**
+	 * Gets the amount of samples added
+	 *
+	 * @return sample count
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Gets the total of all samples added
+	 *
+	 * @return total execution time (nanoseconds)
+	 */
+	public long getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * Gets the smallest sample added
+	 *
+	 * @return minimum execution time (nanoseconds), or 0 if empty
+	 */
+	public long getMin() {
+		return this.count == 0 ? 0 : this.min;
+	}
+
+	/**
+	 * Gets the largest sample added
+	 *
+	 * @return maximum execution time (nanoseconds)
+	 */
+	public long getMax() {
+		return this.max;
+	}
+
+	/**
+	 * Gets the average of all samples added
+	 *
+	 * @return average execution time (nanoseconds), or 0 if empty
+	 */
+	public double getAverage() {
+		return this.count == 0 ? 0.0 : ((double) this.total / (double) this.count);
+	}
+
+	/**
+	 * Estimates the value below which the given fraction of samples fall.
+	 * The returned value is the upper bound of the histogram bucket containing the percentile,
+	 * limited to the maximum sample added.
+	 *
+	 * @param fraction of the samples [0 - 1], for example 0.99 for the 99th percentile
+	 * @return estimated percentile execution time (nanoseconds), or 0 if empty
+	 */
+	public long getPercentile(double fraction) {
+		if (this.count == 0) {
+			return 0;
+		}
+		long remaining = (long) Math.ceil(fraction * this.count);
+		if (remaining <= 0) {
+			return this.getMin();
+		}
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			remaining -= this.buckets[i];
+			if (remaining <= 0) {
+				return Math.min(getBucketUpperBound(i), this.max);
+			}
+		}
+		return this.max;
+	}
+
+	/**
+	 * Gets the histogram bucket index a value is stored in.
+	 * Values below the sub-bucket count are stored linearly, after that every
+	 * power of two is divided into a fixed amount of linear sub-buckets.
+	 *
+	 * @param value to get the bucket of, at least 0
+	 * @return bucket index
+	 */
+	public static int getBucket(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		final int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+		final int subBucket = (int) (value >>> (magnitude - 1)) & (SUB_BUCKET_COUNT - 1);
+		return (magnitude << SUB_BUCKET_BITS) + subBucket;
+	}
+
+	private static long getBucketUpperBound(int bucket) {
+		final int magnitude = bucket >> SUB_BUCKET_BITS;
+		final long subBucket = bucket & (SUB_BUCKET_COUNT - 1);
+		if (magnitude == 0) {
+			return subBucket;
+		}
+		final long lower = (SUB_BUCKET_COUNT | subBucket) << (magnitude - 1);
+		return lower + (1L << (magnitude - 1)) - 1;
+	}
+}
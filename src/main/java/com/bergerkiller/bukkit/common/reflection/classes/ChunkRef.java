@@ -23,6 +23,7 @@ public class ChunkRef {
 	public static final MethodAccessor<byte[]> biomeData = TEMPLATE.getMethod("m");
 	public static final MethodAccessor<Object[]> sections = TEMPLATE.getMethod("i");
 	public static final FieldAccessor<Boolean> seenByPlayer = TEMPLATE.getField("seenByPlayer");
+	public static final FieldAccessor<Boolean> modified = TEMPLATE.getField("l");
 	private static final MethodAccessor<Void> addEntities = TEMPLATE.getMethod("addEntities");
 	private static final MethodAccessor<Void> loadNeighbours = TEMPLATE.getMethod("a", icp, icp, int.class, int.class);
 	private static final MethodAccessor<Boolean> needsSaving = TEMPLATE.getMethod("a", boolean.class);
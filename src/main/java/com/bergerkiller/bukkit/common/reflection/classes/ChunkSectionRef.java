@@ -33,7 +33,7 @@ public class ChunkSectionRef {
 	}
 
 	public static int getData(Object section, int x, int y, int z) {
-		return getData.invoke(section, z & 0xf, y & 0xf, z & 0xf);
+		return getData.invoke(section, x & 0xf, y & 0xf, z & 0xf);
 	}
 	
 	public static void setData(Object section, int x, int y, int z, int data) {
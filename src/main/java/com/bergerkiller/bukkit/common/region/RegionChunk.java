@@ -0,0 +1,210 @@
+package com.bergerkiller.bukkit.common.region;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.bergerkiller.bukkit.common.nbt.CommonTag;
+import com.bergerkiller.bukkit.common.nbt.CommonTagCompound;
+import com.bergerkiller.bukkit.common.nbt.CommonTagList;
+
+/**
+ * Provides read access to the blocks, tile entities and entities of a chunk read from a region file.
+ * Both the Anvil (.mca) and McRegion (.mcr) chunk formats are supported.
+ * Block data is decoded lazily on first access.
+ */
+public class RegionChunk {
+	private final CommonTagCompound level;
+	private final int x, z;
+	private byte[][] blockIds;
+	private byte[][] extBlockIds;
+	private byte[][] blockData;
+
+	/**
+	 * Wraps the NBT data of a chunk
+	 *
+	 * @param chunkData as read using {@link RegionFileReader#readChunk(int, int)}
+	 */
+	public RegionChunk(CommonTagCompound chunkData) {
+		final CommonTagCompound level = chunkData.get("Level", CommonTagCompound.class);
+		this.level = level == null ? chunkData : level;
+		this.x = this.level.getValue("xPos", 0);
+		this.z = this.level.getValue("zPos", 0);
+	}
+
+	/**
+	 * Gets the chunk x-coordinate
+	 *
+	 * @return chunk x
+	 */
+	public int getX() {
+		return this.x;
+	}
+
+	/**
+	 * Gets the chunk z-coordinate
+	 *
+	 * @return chunk z
+	 */
+	public int getZ() {
+		return this.z;
+	}
+
+	/**
+	 * Gets the raw 'Level' NBT data of the chunk
+	 *
+	 * @return chunk level data
+	 */
+	public CommonTagCompound getData() {
+		return this.level;
+	}
+
+	/**
+	 * Gets the block type Id
+	 *
+	 * @param x - coordinate of the block, relative to the chunk
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block, relative to the chunk
+	 * @return block type Id
+	 */
+	public int getBlockTypeId(int x, int y, int z) {
+		loadBlocks();
+		final int sec = y >> 4;
+		if (sec < 0 || sec >= this.blockIds.length || this.blockIds[sec] == null) {
+			return 0;
+		}
+		final int index = getIndex(x, y, z);
+		int typeId = this.blockIds[sec][index] & 0xff;
+		if (this.extBlockIds[sec] != null) {
+			typeId |= getNibble(this.extBlockIds[sec], index) << 8;
+		}
+		return typeId;
+	}
+
+	/**
+	 * Gets the block data
+	 *
+	 * @param x - coordinate of the block, relative to the chunk
+	 * @param y - coordinate of the block
+	 * @param z - coordinate of the block, relative to the chunk
+	 * @return block data
+	 */
+	public int getBlockData(int x, int y, int z) {
+		loadBlocks();
+		final int sec = y >> 4;
+		if (sec < 0 || sec >= this.blockData.length || this.blockData[sec] == null) {
+			return 0;
+		}
+		return getNibble(this.blockData[sec], getIndex(x, y, z));
+	}
+
+	/**
+	 * Checks whether the 16x16x16 section containing a y-coordinate contains no stored blocks
+	 *
+	 * @param y - coordinate within the section
+	 * @return True if the section is empty, False if not
+	 */
+	public boolean isSectionEmpty(int y) {
+		loadBlocks();
+		final int sec = y >> 4;
+		return sec < 0 || sec >= this.blockIds.length || this.blockIds[sec] == null;
+	}
+
+	/**
+	 * Gets the NBT data of all tile entities stored in the chunk
+	 *
+	 * @return tile entity data
+	 */
+	public List<CommonTagCompound> getTileEntities() {
+		return getCompounds("TileEntities");
+	}
+
+	/**
+	 * Gets the NBT data of all entities stored in the chunk
+	 *
+	 * @return entity data
+	 */
+	public List<CommonTagCompound> getEntities() {
+		return getCompounds("Entities");
+	}
+
+	private List<CommonTagCompound> getCompounds(String key) {
+		final CommonTagList list = this.level.get(key, CommonTagList.class);
+		if (list == null || list.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<CommonTagCompound> result = new ArrayList<CommonTagCompound>(list.size());
+		for (CommonTag tag : list) {
+			if (tag instanceof CommonTagCompound) {
+				result.add((CommonTagCompound) tag);
+			}
+		}
+		return result;
+	}
+
+	private void loadBlocks() {
+		if (this.blockIds != null) {
+			return;
+		}
+		this.blockIds = new byte[16][];
+		this.extBlockIds = new byte[16][];
+		this.blockData = new byte[16][];
+		final CommonTagList sections = this.level.get("Sections", CommonTagList.class);
+		if (sections != null) {
+			// Anvil format: up to 16 sections of 16x16x16 blocks
+			for (CommonTag tag : sections) {
+				if (!(tag instanceof CommonTagCompound)) {
+					continue;
+				}
+				final CommonTagCompound section = (CommonTagCompound) tag;
+				final int sec = section.getValue("Y", 0) & 0xf;
+				this.blockIds[sec] = getBytes(section, "Blocks", 4096);
+				this.extBlockIds[sec] = getBytes(section, "Add", 2048);
+				this.blockData[sec] = getBytes(section, "Data", 2048);
+			}
+		} else {
+			// McRegion format: a single 16x128x16 array indexed by x, z, y
+			final byte[] ids = getBytes(this.level, "Blocks", 32768);
+			final byte[] data = getBytes(this.level, "Data", 16384);
+			if (ids == null) {
+				return;
+			}
+			for (int sec = 0; sec < 8; sec++) {
+				final byte[] secIds = new byte[4096];
+				final byte[] secData = new byte[2048];
+				for (int x = 0; x < 16; x++) {
+					for (int z = 0; z < 16; z++) {
+						for (int y = 0; y < 16; y++) {
+							final int oldIndex = (x << 11) | (z << 7) | (sec << 4) | y;
+							final int newIndex = getIndex(x, y, z);
+							secIds[newIndex] = ids[oldIndex];
+							if (data != null) {
+								final int value = getNibble(data, oldIndex);
+								secData[newIndex >> 1] |= ((newIndex & 1) == 0) ? value : (value << 4);
+							}
+						}
+					}
+				}
+				this.blockIds[sec] = secIds;
+				this.blockData[sec] = secData;
+			}
+		}
+	}
+
+	private static byte[] getBytes(CommonTagCompound compound, String key, int length) {
+		final Object value = compound.getValue(key);
+		if (value instanceof byte[] && ((byte[]) value).length >= length) {
+			return (byte[]) value;
+		}
+		return null;
+	}
+
+	private static int getIndex(int x, int y, int z) {
+		return ((y & 0xf) << 8) | ((z & 0xf) << 4) | (x & 0xf);
+	}
+
+	private static int getNibble(byte[] data, int index) {
+		final int value = data[index >> 1];
+		return ((index & 1) == 0) ? (value & 0xf) : ((value >> 4) & 0xf);
+	}
+}
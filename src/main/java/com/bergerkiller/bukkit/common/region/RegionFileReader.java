@@ -0,0 +1,298 @@
+package com.bergerkiller.bukkit.common.region;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.bergerkiller.bukkit.common.nbt.CommonTag;
+import com.bergerkiller.bukkit.common.nbt.CommonTagCompound;
+import com.bergerkiller.bukkit.common.utils.NBTUtil;
+import com.bergerkiller.bukkit.common.utils.ParseUtil;
+import com.bergerkiller.bukkit.common.utils.WorldUtil;
+
+/**
+ * Reads the chunks stored in a region (.mca or .mcr) file without loading them into the server.<br>
+ * The file is memory-mapped read-only and chunk data is only decompressed when requested.
+ * The mapping stays in place until the reader is garbage collected, see {@link #close()}.
+ * The World the region file belongs to does not have to be loaded.<br><br>
+ *
+ * Chunks can be read from multiple threads at the same time. Note that chunks the server
+ * has not yet saved are not visible, and that reading a region of a loaded World while the server
+ * is saving it may yield a corrupted chunk (resulting in an IOException).
+ */
+public class RegionFileReader {
+	private static final int SECTOR_SIZE = 4096;
+	private static final int CHUNK_COUNT = 32 * 32;
+	private static final int COMPRESSION_GZIP = 1;
+	private static final int COMPRESSION_ZLIB = 2;
+	private final File file;
+	private final int regionX, regionZ;
+	private final int[] offsets = new int[CHUNK_COUNT];
+	private final int[] timestamps = new int[CHUNK_COUNT];
+	private final int fileSize;
+	private MappedByteBuffer buffer;
+
+	/**
+	 * Opens a region file for reading and parses the chunk sector table
+	 *
+	 * @param file of the region to read
+	 * @throws IOException if the file could not be read
+	 */
+	public RegionFileReader(File file) throws IOException {
+		this.file = file;
+		// Region coordinates are stored in the file name: r.x.z.mca
+		final String[] parts = file.getName().split("\\.");
+		if (parts.length == 4) {
+			this.regionX = ParseUtil.parseInt(parts[1], 0);
+			this.regionZ = ParseUtil.parseInt(parts[2], 0);
+		} else {
+			this.regionX = this.regionZ = 0;
+		}
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+		this.fileSize = this.buffer.capacity();
+		if (this.fileSize >= 2 * SECTOR_SIZE) {
+			final ByteBuffer header = this.buffer.duplicate();
+			for (int i = 0; i < CHUNK_COUNT; i++) {
+				this.offsets[i] = header.getInt();
+			}
+			for (int i = 0; i < CHUNK_COUNT; i++) {
+				this.timestamps[i] = header.getInt();
+			}
+		}
+	}
+
+	/**
+	 * Gets the region file being read
+	 *
+	 * @return region file
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Gets the x-coordinate of the region, as parsed from the file name
+	 *
+	 * @return region x-coordinate
+	 */
+	public int getRegionX() {
+		return this.regionX;
+	}
+
+	/**
+	 * Gets the z-coordinate of the region, as parsed from the file name
+	 *
+	 * @return region z-coordinate
+	 */
+	public int getRegionZ() {
+		return this.regionZ;
+	}
+
+	/**
+	 * Checks whether a chunk is stored in this region.
+	 * Chunk coordinates can be world chunk coordinates or coordinates relative to the region.
+	 *
+	 * @param cx - coordinate of the chunk
+	 * @param cz - coordinate of the chunk
+	 * @return True if the chunk is stored, False if not
+	 */
+	public boolean hasChunk(int cx, int cz) {
+		final int offset = this.offsets[getIndex(cx, cz)];
+		return offset != 0 && isValidOffset(offset);
+	}
+
+	/**
+	 * Gets the amount of chunks stored in this region
+	 *
+	 * @return chunk count
+	 */
+	public int getChunkCount() {
+		int count = 0;
+		for (int offset : this.offsets) {
+			if (offset != 0 && isValidOffset(offset)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the time a chunk was last saved
+	 *
+	 * @param cx - coordinate of the chunk
+	 * @param cz - coordinate of the chunk
+	 * @return last saved time in seconds since the epoch, or 0 if not stored
+	 */
+	public int getTimestamp(int cx, int cz) {
+		return this.timestamps[getIndex(cx, cz)];
+	}
+
+	/**
+	 * Opens a stream to read the decompressed NBT data of a chunk
+	 *
+	 * @param cx - coordinate of the chunk
+	 * @param cz - coordinate of the chunk
+	 * @return decompressed chunk data stream, or null if the chunk is not stored
+	 * @throws IOException if the chunk data or its location is corrupted
+	 */
+	public DataInputStream openChunk(int cx, int cz) throws IOException {
+		final ByteBuffer buffer = this.buffer;
+		if (buffer == null) {
+			throw new IOException("Region file reader is closed");
+		}
+		final int offset = this.offsets[getIndex(cx, cz)];
+		if (offset == 0) {
+			return null;
+		}
+		if (!isValidOffset(offset)) {
+			throw new IOException("Chunk [" + cx + ", " + cz + "] in " + this.file.getName() + " is stored outside of the file");
+		}
+		// Validated offsets lie within the file, so the position fits in an int
+		final int position = (int) getSectorStart(offset);
+		final int length = buffer.getInt(position);
+		if (length <= 1 || (long) length + 4L > (long) (offset & 0xff) * SECTOR_SIZE) {
+			throw new IOException("Chunk [" + cx + ", " + cz + "] in " + this.file.getName() + " has an invalid length");
+		}
+		final int compression = buffer.get(position + 4);
+		final ByteBuffer data = buffer.duplicate();
+		data.position(position + 5);
+		data.limit(position + 4 + length);
+		final InputStream stream = new ByteBufferInputStream(data);
+		if (compression == COMPRESSION_GZIP) {
+			return new DataInputStream(new GZIPInputStream(stream));
+		} else if (compression == COMPRESSION_ZLIB) {
+			return new DataInputStream(new InflaterInputStream(stream));
+		} else {
+			throw new IOException("Chunk [" + cx + ", " + cz + "] in " + this.file.getName() + " uses unknown compression " + compression);
+		}
+	}
+
+	/**
+	 * Reads and decompresses the NBT data of a chunk
+	 *
+	 * @param cx - coordinate of the chunk
+	 * @param cz - coordinate of the chunk
+	 * @return chunk data compound, or null if the chunk is not stored
+	 * @throws IOException if the chunk data is corrupted
+	 */
+	public CommonTagCompound readChunk(int cx, int cz) throws IOException {
+		final DataInputStream stream = openChunk(cx, cz);
+		if (stream == null) {
+			return null;
+		}
+		try {
+			return (CommonTagCompound) CommonTag.create(NBTUtil.readCompoundUncompressed(stream));
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Closes this reader, after which it can no longer be used to open chunks.<br>
+	 * The file mapping itself is not released right away: Java offers no safe way to unmap a buffer,
+	 * and chunk streams still being read would crash the server if it was. The mapping is released once
+	 * this reader and all streams opened from it are garbage collected. Until then, the file can not be
+	 * deleted or replaced on Windows.
+	 */
+	public void close() {
+		this.buffer = null;
+	}
+
+	/**
+	 * Checks whether the sectors of an offset lie within the file, after the header sectors.
+	 * Long arithmetic is used, as the sector position times the sector size can exceed an int.
+	 */
+	private boolean isValidOffset(int offset) {
+		final int sectors = offset & 0xff;
+		if (sectors == 0 || (offset >>> 8) < 2) {
+			return false;
+		}
+		return getSectorStart(offset) + (long) sectors * SECTOR_SIZE <= this.fileSize;
+	}
+
+	private static long getSectorStart(int offset) {
+		return (long) (offset >>> 8) * SECTOR_SIZE;
+	}
+
+	private static int getIndex(int cx, int cz) {
+		return (cx & 31) | ((cz & 31) << 5);
+	}
+
+	/**
+	 * Gets all the region files of a World, loaded or not.
+	 * If the World contains Anvil (.mca) region files, only those are returned,
+	 * otherwise the McRegion (.mcr) region files are returned.
+	 *
+	 * @param worldName of the World
+	 * @return region files, or an empty array if none are found
+	 */
+	public static File[] getRegionFiles(String worldName) {
+		final File folder = WorldUtil.getWorldRegionFolder(worldName);
+		if (folder == null) {
+			return new File[0];
+		}
+		File[] files = listRegionFiles(folder, ".mca");
+		if (files.length == 0) {
+			files = listRegionFiles(folder, ".mcr");
+		}
+		return files;
+	}
+
+	private static File[] listRegionFiles(File folder, final String extension) {
+		final File[] files = folder.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith("r.") && name.endsWith(extension);
+			}
+		});
+		return files == null ? new File[0] : files;
+	}
+
+	/**
+	 * Reads from a (mapped) byte buffer without copying the contents
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		public ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return this.buffer.hasRemaining() ? (this.buffer.get() & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			final int remaining = this.buffer.remaining();
+			if (remaining == 0) {
+				return -1;
+			}
+			len = Math.min(len, remaining);
+			this.buffer.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return this.buffer.remaining();
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package com.bergerkiller.bukkit.common.region;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+import com.bergerkiller.bukkit.common.Task;
+import com.bergerkiller.bukkit.common.internal.CommonPlugin;
+import com.bergerkiller.bukkit.common.nbt.CommonTagCompound;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+
+/**
+ * Scans all the chunks stored in the region files of a World using multiple worker threads.
+ * The World does not have to be loaded.<br><br>
+ *
+ * Every region file is read using a {@link RegionFileReader} on one of the worker threads, after which
+ * all its chunks are passed to the {@link RegionScanVisitor}. Once a region file is fully visited, its
+ * result is merged into the total result. Progress and the final result can be received on the main
+ * thread using a {@link RegionScanListener}.<br><br>
+ *
+ * The worker threads of a scan stop once it is finished or cancelled.
+ * All scans that are still running are cancelled when BKCommonLib disables.
+ *
+ * @param <T> - type of result produced
+ */
+public class RegionScan<T> {
+	private static final AtomicInteger threadCounter = new AtomicInteger();
+	private static final Set<RegionScan<?>> runningScans = Collections.newSetFromMap(new ConcurrentHashMap<RegionScan<?>, Boolean>());
+	private final File[] regionFiles;
+	private final RegionScanVisitor<T> visitor;
+	private final T result;
+	private final AtomicInteger scannedRegions = new AtomicInteger();
+	private final AtomicInteger scannedChunks = new AtomicInteger();
+	private final CountDownLatch finished;
+	private int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	private ThreadPoolExecutor executor = null;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Creates a new scan of all the region files of a World
+	 *
+	 * @param worldName of the World to scan
+	 * @param visitor to visit all the chunks with
+	 */
+	public RegionScan(String worldName, RegionScanVisitor<T> visitor) {
+		this(RegionFileReader.getRegionFiles(worldName), visitor);
+	}
+
+	/**
+	 * Creates a new scan of the region files specified
+	 *
+	 * @param regionFiles to scan
+	 * @param visitor to visit all the chunks with
+	 */
+	public RegionScan(File[] regionFiles, RegionScanVisitor<T> visitor) {
+		this.regionFiles = regionFiles.clone();
+		this.visitor = visitor;
+		this.result = visitor.createResult();
+		this.finished = new CountDownLatch(this.regionFiles.length);
+	}
+
+	/**
+	 * Sets the amount of worker threads used to scan region files.
+	 * By default one thread less than the amount of available processors is used.
+	 *
+	 * @param threadCount to set to
+	 * @return This Region Scan
+	 */
+	public RegionScan<T> setThreadCount(int threadCount) {
+		if (this.executor != null) {
+			throw new IllegalStateException("Thread count can not be changed once the scan is started");
+		}
+		this.threadCount = Math.max(1, threadCount);
+		return this;
+	}
+
+	/**
+	 * Gets the amount of region files to scan
+	 *
+	 * @return region file count
+	 */
+	public int getTotalRegions() {
+		return this.regionFiles.length;
+	}
+
+	/**
+	 * Gets the amount of region files that have been scanned so far.
+	 * Region files that failed to be read, or of which the scan was cancelled, are not counted.
+	 *
+	 * @return scanned region file count
+	 */
+	public int getScannedRegions() {
+		return this.scannedRegions.get();
+	}
+
+	/**
+	 * Gets the amount of chunks that have been visited so far
+	 *
+	 * @return scanned chunk count
+	 */
+	public int getScannedChunks() {
+		return this.scannedChunks.get();
+	}
+
+	/**
+	 * Checks whether all region files have been scanned, or the scan was cancelled and all workers stopped
+	 *
+	 * @return True if finished, False if not
+	 */
+	public boolean isFinished() {
+		return this.finished.getCount() == 0;
+	}
+
+	/**
+	 * Checks whether this scan was cancelled
+	 *
+	 * @return True if cancelled, False if not
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Gets the total result. While the scan is still running this only contains the merged
+	 * results of the region files scanned so far, and must not be accessed.
+	 *
+	 * @return total result
+	 */
+	public T getResult() {
+		return this.result;
+	}
+
+	/**
+	 * Starts scanning on the worker threads
+	 *
+	 * @return This Region Scan
+	 */
+	public RegionScan<T> start() {
+		if (this.executor != null) {
+			throw new IllegalStateException("Region scan is already started");
+		}
+		this.executor = new ThreadPoolExecutor(this.threadCount, this.threadCount, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "BKCommonLib region scan " + threadCounter.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		if (this.regionFiles.length > 0) {
+			runningScans.add(this);
+		}
+		for (final File regionFile : this.regionFiles) {
+			this.executor.execute(new Runnable() {
+				public void run() {
+					try {
+						if (!cancelled) {
+							scanRegion(regionFile);
+						}
+					} finally {
+						regionDone();
+					}
+				}
+			});
+		}
+		// Worker threads stop once all region files are scanned
+		this.executor.shutdown();
+		return this;
+	}
+
+	private void regionDone() {
+		this.finished.countDown();
+		if (this.finished.getCount() == 0) {
+			runningScans.remove(this);
+		}
+	}
+
+	/**
+	 * Starts scanning on the worker threads, and reports the progress and result to
+	 * a listener on the main thread
+	 *
+	 * @param plugin to schedule the progress reporting task for
+	 * @param listener to report to
+	 * @param interval in ticks between progress updates
+	 * @return This Region Scan
+	 */
+	public RegionScan<T> start(JavaPlugin plugin, final RegionScanListener<T> listener, long interval) {
+		this.start();
+		new Task(plugin) {
+			private int lastScanned = -1;
+
+			public void run() {
+				final boolean done = isFinished();
+				final int scanned = getScannedRegions();
+				if (scanned != lastScanned) {
+					lastScanned = scanned;
+					listener.onProgress(scanned, getTotalRegions());
+				}
+				if (done) {
+					this.stop();
+					listener.onFinish(result, cancelled);
+				}
+			}
+		}.start(interval, interval);
+		return this;
+	}
+
+	/**
+	 * Cancels this scan. Region files that are currently being scanned are stopped
+	 * after the chunk being visited, their partial results are discarded.
+	 * Region files that are still waiting for a worker thread are not scanned at all.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+		if (this.executor != null) {
+			final List<Runnable> dropped = new ArrayList<Runnable>();
+			this.executor.getQueue().drainTo(dropped);
+			for (int i = 0; i < dropped.size(); i++) {
+				regionDone();
+			}
+		}
+	}
+
+	/**
+	 * Cancels all region scans that are still running.
+	 * This is called by BKCommonLib when it disables.
+	 */
+	public static void cancelAll() {
+		for (RegionScan<?> scan : runningScans) {
+			scan.cancel();
+		}
+	}
+
+	/**
+	 * Waits for this scan to finish, and returns the total result.
+	 * This must not be called on the main thread.
+	 *
+	 * @return total result
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public T await() throws InterruptedException {
+		this.finished.await();
+		return this.result;
+	}
+
+	private void scanRegion(File regionFile) {
+		final RegionFileReader reader;
+		try {
+			reader = new RegionFileReader(regionFile);
+		} catch (IOException ex) {
+			CommonPlugin.LOGGER.log(Level.WARNING, "Failed to read region file " + regionFile.getName() + ": " + ex.getMessage());
+			return;
+		}
+		try {
+			final T regionResult = this.visitor.createResult();
+			for (int cz = 0; cz < 32; cz++) {
+				for (int cx = 0; cx < 32; cx++) {
+					if (this.cancelled) {
+						return;
+					}
+					if (!reader.hasChunk(cx, cz)) {
+						continue;
+					}
+					final CommonTagCompound data;
+					try {
+						data = reader.readChunk(cx, cz);
+					} catch (IOException ex) {
+						CommonPlugin.LOGGER.log(Level.WARNING, "Failed to read chunk [" + cx + ", " + cz + "] of region file " + regionFile.getName() + ": " + ex.getMessage());
+						continue;
+					}
+					if (data != null) {
+						this.visitor.visit(new RegionChunk(data), regionResult);
+						this.scannedChunks.incrementAndGet();
+					}
+				}
+			}
+			synchronized (this.result) {
+				this.visitor.merge(this.result, regionResult);
+			}
+			this.scannedRegions.incrementAndGet();
+		} catch (Throwable t) {
+			CommonPlugin.LOGGER.log(Level.SEVERE, "Failed to scan region file " + regionFile.getName() + ":");
+			CommonUtil.printFilteredStackTrace(t);
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.bergerkiller.bukkit.common.region;
+
+/**
+ * Receives the progress of a {@link RegionScan} on the main thread
+ *
+ * @param <T> - type of result produced
+ */
+public interface RegionScanListener<T> {
+
+	/**
+	 * Called when more region files have been scanned
+	 *
+	 * @param scannedRegions amount of region files that have been scanned
+	 * @param totalRegions amount of region files to scan
+	 */
+	public void onProgress(int scannedRegions, int totalRegions);
+
+	/**
+	 * Called once the scan has finished or was cancelled
+	 *
+	 * @param result of the scan, containing the merged results of all scanned region files
+	 * @param cancelled whether the scan was cancelled before all region files were scanned
+	 */
+	public void onFinish(T result, boolean cancelled);
+}
@@ -0,0 +1,35 @@
+package com.bergerkiller.bukkit.common.region;
+
+/**
+ * Visits all the chunks found during a {@link RegionScan}.<br>
+ * Every region file is visited on a single worker thread using its own result object.
+ * Region results are merged into the total result one at a time, so implementations
+ * do not need to be thread-safe as long as they only modify the result passed in.
+ *
+ * @param <T> - type of result produced
+ */
+public interface RegionScanVisitor<T> {
+
+	/**
+	 * Creates a new, empty result. Called once for the total result and once for every region file.
+	 *
+	 * @return new result
+	 */
+	public T createResult();
+
+	/**
+	 * Visits a single chunk, called on a worker thread
+	 *
+	 * @param chunk to visit
+	 * @param regionResult of the region file the chunk is in
+	 */
+	public void visit(RegionChunk chunk, T regionResult);
+
+	/**
+	 * Merges the result of a fully visited region file into the total result
+	 *
+	 * @param totalResult to merge into
+	 * @param regionResult to merge
+	 */
+	public void merge(T totalResult, T regionResult);
+}
@@ -2,6 +2,11 @@ package com.bergerkiller.bukkit.common.utils;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import net.minecraft.server.TileEntity;
+import net.minecraft.server.WorldServer;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -23,8 +28,8 @@ import com.bergerkiller.bukkit.common.internal.CommonNMS;
 import com.bergerkiller.bukkit.common.protocol.CommonPacket;
 import com.bergerkiller.bukkit.common.reflection.SafeField;
 import com.bergerkiller.bukkit.common.reflection.classes.BlockStateRef;
+import com.bergerkiller.bukkit.common.reflection.classes.ChunkRef;
 import com.bergerkiller.bukkit.common.reflection.classes.TileEntityRef;
-import com.bergerkiller.bukkit.common.reflection.classes.WorldRef;
 
 /**
  * Multiple Block utilities you can use to manipulate blocks and get block information
@@ -380,43 +385,48 @@ public class BlockUtil extends MaterialUtil {
 		return getBlockStates(middle.getWorld(), middle.getX(), middle.getY(), middle.getZ(), radiusX, radiusY, radiusZ);
 	}
 
-	private static final ArrayList<BlockState> blockStateBuff = new ArrayList<BlockState>();
-
 	public static Collection<BlockState> getBlockStates(org.bukkit.World world, int x, int y, int z, int radiusX, int radiusY, int radiusZ) {
-		try {
-			if (radiusX == 0 && radiusY == 0 && radiusZ == 0) {
-				// simplified coding instead
-				offerTile(world, x, y, z);
-			} else {
-				// loop through tile entity list
-				int xMin = x - radiusX;
-				int yMin = y - radiusY;
-				int zMin = z - radiusZ;
-				int xMax = x + radiusX;
-				int yMax = y + radiusY;
-				int zMax = z + radiusZ;
-				int tx, ty, tz;
-				for (Object tile : WorldRef.tileEntityList.get(Conversion.toWorldHandle.convert(world))) {
-					tx = TileEntityRef.x.get(tile);
-					ty = TileEntityRef.y.get(tile);
-					tz = TileEntityRef.z.get(tile);
-					if (tx < xMin || ty < yMin || tz < zMin || tx > xMax || ty > yMax || tz > zMax) {
+		final List<BlockState> states = new ArrayList<BlockState>();
+		if (radiusX == 0 && radiusY == 0 && radiusZ == 0) {
+			// simplified coding instead
+			offerTile(states, world, x, y, z);
+		} else {
+			// loop through the tile entities of the loaded chunks overlapping the area
+			final int xMin = x - radiusX;
+			final int yMin = y - radiusY;
+			final int zMin = z - radiusZ;
+			final int xMax = x + radiusX;
+			final int yMax = y + radiusY;
+			final int zMax = z + radiusZ;
+			final WorldServer worldHandle = CommonNMS.getNative(world);
+			for (int cx = xMin >> 4; cx <= xMax >> 4; cx++) {
+				for (int cz = zMin >> 4; cz <= zMax >> 4; cz++) {
+					if (!worldHandle.chunkProviderServer.isChunkLoaded(cx, cz)) {
 						continue;
 					}
-					// Get again - security against ghost tiles
-					offerTile(world, tx, ty, tz);
+					final Map<?, ?> tiles = ChunkRef.tileEntities.get(worldHandle.getChunkAt(cx, cz));
+					if (tiles.isEmpty()) {
+						continue;
+					}
+					// Copy the tile entities first, getting the tile entity again can alter the map
+					final TileEntity[] chunkTiles = tiles.values().toArray(new TileEntity[tiles.size()]);
+					for (TileEntity tile : chunkTiles) {
+						if (tile.x < xMin || tile.y < yMin || tile.z < zMin || tile.x > xMax || tile.y > yMax || tile.z > zMax) {
+							continue;
+						}
+						// Get again - security against ghost tiles
+						offerTile(states, world, tile.x, tile.y, tile.z);
+					}
 				}
 			}
-			return new ArrayList<BlockState>(blockStateBuff);
-		} finally {
-			blockStateBuff.clear();
 		}
+		return states;
 	}
 
-	private static void offerTile(World world, int x, int y, int z) {
+	private static void offerTile(List<BlockState> states, World world, int x, int y, int z) {
 		BlockState state = Conversion.toBlockState.convert(TileEntityRef.getFromWorld(world, x, y, z));
 		if (state != null) {
-			blockStateBuff.add(state);
+			states.add(state);
 		}
 	}
 }
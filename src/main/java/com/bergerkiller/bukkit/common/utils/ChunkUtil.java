@@ -15,6 +15,7 @@ import org.bukkit.craftbukkit.util.LongHashSet;
 import org.bukkit.craftbukkit.util.LongObjectHashMap;
 import org.bukkit.entity.Player;
 
+import com.bergerkiller.bukkit.common.ChunkDataSnapshot;
 import com.bergerkiller.bukkit.common.collections.FilteringCollectionNull;
 import com.bergerkiller.bukkit.common.collections.List2D;
 import com.bergerkiller.bukkit.common.conversion.Conversion;
@@ -100,6 +101,17 @@ public class ChunkUtil {
 		return ChunkRef.getTypeId(CommonNMS.getNative(chunk), x, y, z);
 	}
 
+	/**
+	 * Copies the block ids, block data, light levels, height map and biomes of a chunk into an immutable snapshot.
+	 * This must be called from the main thread, the returned snapshot can be read from any thread.
+	 * 
+	 * @param chunk to take a snapshot of
+	 * @return chunk data snapshot
+	 */
+	public static ChunkDataSnapshot snapshot(org.bukkit.Chunk chunk) {
+		return new ChunkDataSnapshot(chunk);
+	}
+
 	/**
 	 * Sets a block type id and data without causing physics or lighting updates
 	 * 
@@ -36,6 +36,7 @@ import com.bergerkiller.bukkit.common.config.BasicConfiguration;
 import com.bergerkiller.bukkit.common.conversion.ConversionPairs;
 import com.bergerkiller.bukkit.common.internal.CommonNMS;
 import com.bergerkiller.bukkit.common.internal.CommonPlugin;
+import com.bergerkiller.bukkit.common.metrics.MetricsRegistry;
 import com.bergerkiller.bukkit.common.reflection.FieldAccessor;
 import com.bergerkiller.bukkit.common.reflection.SafeField;
 
@@ -501,6 +502,16 @@ public class CommonUtil {
 		return Bukkit.getPluginManager().getPlugins();
 	}
 
+	/**
+	 * Obtains the registry of named timers, counters and gauges shared by all plugins.
+	 * The metrics registered in it are periodically exported when metrics exporting is enabled.
+	 * 
+	 * @return metrics registry
+	 */
+	public static MetricsRegistry getMetricsRegistry() {
+		return CommonPlugin.METRICS;
+	}
+
 	/**
 	 * Checks whether the plugin of the given name is enabled on the Server
 	 * 
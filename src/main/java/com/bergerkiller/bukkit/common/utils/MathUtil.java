@@ -537,6 +537,31 @@ public class MathUtil {
 		return LongHash.lsw(key);
 	}
 
+	/**
+	 * Packs block coordinates into a single long value.
+	 * The x and z coordinates are stored using 26 bits, the y coordinate using 12 bits.
+	 * 
+	 * @param x - coordinate
+	 * @param y - coordinate
+	 * @param z - coordinate
+	 * @return packed coordinates
+	 */
+	public static long toBlockKey(int x, int y, int z) {
+		return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (long) (y & 0xFFF);
+	}
+
+	public static int blockKeyX(long key) {
+		return (int) (key >> 38);
+	}
+
+	public static int blockKeyY(long key) {
+		return (int) (key << 52 >> 52);
+	}
+
+	public static int blockKeyZ(long key) {
+		return (int) (key << 26 >> 38);
+	}
+
 	public static void setVectorLength(Vector vector, double length) {
 		setVectorLengthSquared(vector, Math.signum(length) * length * length);
 	}
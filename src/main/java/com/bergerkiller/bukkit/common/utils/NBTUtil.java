@@ -1,5 +1,6 @@
 package com.bergerkiller.bukkit.common.utils;
 
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.IOException;
@@ -85,6 +86,17 @@ public class NBTUtil {
 		return NBTCompressedStreamTools.a(stream);
 	}
 
+	/**
+	 * Reads an uncompressed NBTTagCompound handle from a data input
+	 * 
+	 * @param input to read from
+	 * @return NBTTagCompound
+	 * @throws IOException
+	 */
+	public static Object readCompoundUncompressed(DataInput input) throws IOException {
+		return NBTCompressedStreamTools.a(input);
+	}
+
 	/**
 	 * Writes an NBTTagCompound to an output stream
 	 * 
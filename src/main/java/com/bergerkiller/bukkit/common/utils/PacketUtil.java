@@ -236,4 +236,26 @@ public class PacketUtil {
 	public static long getPendingBytes(Player player) {
 		return CommonPlugin.getInstance().getPacketHandler().getPendingBytes(player);
 	}
+
+	/**
+	 * Gets the total amount of bytes of packet data that still had to be sent to the player,
+	 * as measured the last time all connections were sampled. The value is refreshed every few ticks,
+	 * which makes this method cheap enough to be called for every packet that is about to be sent.
+	 * 
+	 * @param player to get the sampled pending bytes of
+	 * @return sampled pending bytes
+	 */
+	public static long getPendingBytesSampled(Player player) {
+		return CommonPlugin.getInstance().getPendingBytesSample(player);
+	}
+
+	/**
+	 * Gets the highest amount of bytes of packet data that still had to be sent to any player,
+	 * as measured the last time all connections were sampled.
+	 * 
+	 * @return highest sampled pending bytes
+	 */
+	public static long getMaxPendingBytesSampled() {
+		return CommonPlugin.getInstance().getMaxPendingBytesSample();
+	}
 }
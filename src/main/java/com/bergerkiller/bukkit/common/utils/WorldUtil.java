@@ -405,7 +405,9 @@ public class WorldUtil extends ChunkUtil {
 	}
 
 	/**
-	 * Performs a ray tracing operation from one point to the other, and obtains the (first) block hit
+	 * Performs a ray tracing operation from one point to the other, and obtains the (first) block hit.
+	 * The exact collision shapes of the blocks are used. To cast a lot of rays,
+	 * use a {@link com.bergerkiller.bukkit.common.BlockRayTracer BlockRayTracer} instead.
 	 * 
 	 * @param world to ray trace in
 	 * @param startX to start ray tracing from
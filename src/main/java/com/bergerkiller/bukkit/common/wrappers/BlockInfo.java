@@ -77,6 +77,15 @@ public class BlockInfo extends BasicWrapper {
 		return false;
 	}
 
+	/**
+	 * Gets whether entities can move through the block, such as air, water, torches and flowers
+	 * 
+	 * @return True if it is passable, False if not
+	 */
+	public boolean isPassable() {
+		return true;
+	}
+
 	/**
 	 * Gets the opacity of the Block
 	 * 
@@ -40,6 +40,11 @@ class BlockInfoImpl extends BlockInfo {
 		return BlockRef.isSolid.invoke(handle);
 	}
 
+	@Override
+	public boolean isPassable() {
+		return !((Block) handle).material.isSolid();
+	}
+
 	@Override
 	public boolean isPowerSource() {
 		return BlockRef.isPowerSource.invoke(handle);
@@ -0,0 +1,107 @@
+package com.bergerkiller.bukkit.common.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LongOpenHashMapTest extends TestCase {
+
+	public void testPutGetRemove() {
+		LongOpenHashMap<String> map = new LongOpenHashMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(5L, "a"));
+		assertNull(map.put(-5L, "b"));
+		assertNull(map.put(0L, "c"));
+		assertEquals(3, map.size());
+		assertEquals("a", map.get(5L));
+		assertEquals("b", map.get(-5L));
+		assertEquals("c", map.get(0L));
+		assertNull(map.get(6L));
+		assertTrue(map.containsKey(0L));
+		assertFalse(map.containsKey(6L));
+
+		assertEquals("a", map.put(5L, "d"));
+		assertEquals(3, map.size());
+		assertEquals("d", map.get(5L));
+
+		assertEquals("d", map.remove(5L));
+		assertNull(map.remove(5L));
+		assertFalse(map.containsKey(5L));
+		assertEquals(2, map.size());
+	}
+
+	public void testNullValue() {
+		try {
+			new LongOpenHashMap<String>().put(1L, null);
+			fail("Null values should not be accepted");
+		} catch (IllegalArgumentException ex) {
+		}
+	}
+
+	public void testCollidingKeys() {
+		// Many keys in a small table form long probe chains, removing from the middle must keep all reachable
+		LongOpenHashMap<Long> map = new LongOpenHashMap<Long>();
+		for (long key = 0; key < 1000; key++) {
+			map.put(key * 1024L, key);
+		}
+		for (long key = 0; key < 1000; key += 3) {
+			assertEquals(Long.valueOf(key), map.remove(key * 1024L));
+		}
+		for (long key = 0; key < 1000; key++) {
+			if (key % 3 == 0) {
+				assertFalse(map.containsKey(key * 1024L));
+			} else {
+				assertEquals(Long.valueOf(key), map.get(key * 1024L));
+			}
+		}
+	}
+
+	public void testRandomAgainstHashMap() {
+		final Random random = new Random(1234L);
+		final LongOpenHashMap<Integer> map = new LongOpenHashMap<Integer>();
+		final Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		for (int i = 0; i < 20000; i++) {
+			final long key = random.nextInt(2000) - 1000;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				assertEquals(expected.put(key, i), map.put(key, i));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), map.get(entry.getKey()));
+		}
+		assertEquals(expected.size(), map.getKeys().length);
+		assertEquals(expected.size(), map.getValues().size());
+	}
+
+	public void testCursor() {
+		LongOpenHashMap<Long> map = new LongOpenHashMap<Long>();
+		for (long key = 1; key <= 100; key++) {
+			map.put(key, key * 2);
+		}
+		int count = 0;
+		LongOpenHashMap<Long>.Cursor cursor = map.cursor();
+		while (cursor.next()) {
+			assertEquals(cursor.key() * 2, cursor.value().longValue());
+			count++;
+		}
+		assertEquals(100, count);
+	}
+
+	public void testClear() {
+		LongOpenHashMap<String> map = new LongOpenHashMap<String>(100);
+		for (long key = 0; key < 100; key++) {
+			map.put(key, "value");
+		}
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(10L));
+		assertFalse(map.cursor().next());
+		map.put(10L, "new");
+		assertEquals("new", map.get(10L));
+	}
+}
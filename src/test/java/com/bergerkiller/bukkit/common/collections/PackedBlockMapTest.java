@@ -0,0 +1,74 @@
+package com.bergerkiller.bukkit.common.collections;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+
+public class PackedBlockMapTest extends TestCase {
+
+	public void testBlockKey() {
+		final int[][] coords = {{0, 0, 0}, {15, 255, 15}, {-1, 0, -1}, {-30000000, -1, 30000000}, {1234567, 64, -7654321}};
+		for (int[] coord : coords) {
+			final long key = MathUtil.toBlockKey(coord[0], coord[1], coord[2]);
+			assertEquals(coord[0], MathUtil.blockKeyX(key));
+			assertEquals(coord[1], MathUtil.blockKeyY(key));
+			assertEquals(coord[2], MathUtil.blockKeyZ(key));
+		}
+	}
+
+	public void testPutGetRemove() {
+		PackedBlockMap<String> map = new PackedBlockMap<String>();
+		assertNull(map.put("world", 1, 64, 1, "a"));
+		assertNull(map.put("world", -1, 64, -1, "b"));
+		assertNull(map.put("world_nether", 1, 64, 1, "c"));
+		assertEquals(3, map.size());
+		assertEquals("a", map.get("world", 1, 64, 1));
+		assertEquals("b", map.get("world", -1, 64, -1));
+		assertEquals("c", map.get("world_nether", 1, 64, 1));
+		assertNull(map.get("world", 1, 65, 1));
+		assertNull(map.get("world_the_end", 1, 64, 1));
+
+		assertEquals("a", map.put("world", 1, 64, 1, "d"));
+		assertEquals(3, map.size());
+
+		assertEquals("d", map.remove("world", 1, 64, 1));
+		assertNull(map.remove("world", 1, 64, 1));
+		assertFalse(map.containsKey("world", 1, 64, 1));
+		assertNull(map.getChunk("world", 0, 0));
+		assertEquals(2, map.size());
+	}
+
+	public void testChunks() {
+		PackedBlockMap<String> map = new PackedBlockMap<String>();
+		map.put("world", 0, 10, 0, "a");
+		map.put("world", 15, 10, 15, "b");
+		map.put("world", 16, 10, 0, "c");
+		map.put("world", -1, 10, 0, "d");
+		assertEquals(2, map.getChunk("world", 0, 0).size());
+		assertEquals(1, map.getChunk("world", 1, 0).size());
+		assertEquals(1, map.getChunk("world", -1, 0).size());
+
+		List<String> values = map.getValues("world", 0, 0, 1, 1);
+		assertEquals(3, values.size());
+		assertTrue(values.contains("a") && values.contains("b") && values.contains("c"));
+		assertTrue(map.getValues("world_nether", 0, 0, 1, 1).isEmpty());
+	}
+
+	public void testClearWorld() {
+		PackedBlockMap<String> map = new PackedBlockMap<String>();
+		for (int i = 0; i < 100; i++) {
+			map.put("world", i, 10, i * 3, "a");
+			map.put("world_nether", i, 10, i * 3, "b");
+		}
+		assertEquals(200, map.size());
+		map.clear("world");
+		assertEquals(100, map.size());
+		assertNull(map.get("world", 1, 10, 3));
+		assertEquals("b", map.get("world_nether", 1, 10, 3));
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get("world_nether", 1, 10, 3));
+	}
+}
@@ -0,0 +1,39 @@
+package com.bergerkiller.bukkit.common.collections;
+
+import junit.framework.TestCase;
+
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+
+public class PackedBlockSetTest extends TestCase {
+
+	public void testAddContainsRemove() {
+		PackedBlockSet set = new PackedBlockSet();
+		assertTrue(set.add("world", 5, 70, -5));
+		assertFalse(set.add("world", 5, 70, -5));
+		assertTrue(set.add("world", 5, 71, -5));
+		assertTrue(set.contains("world", 5, 70, -5));
+		assertFalse(set.contains("world_nether", 5, 70, -5));
+		assertEquals(2, set.size());
+
+		assertTrue(set.remove("world", 5, 70, -5));
+		assertFalse(set.remove("world", 5, 70, -5));
+		assertFalse(set.contains("world", 5, 70, -5));
+		assertEquals(1, set.size());
+	}
+
+	public void testChunkBlocks() {
+		PackedBlockSet set = new PackedBlockSet();
+		set.add("world", 17, 5, 33);
+		set.add("world", 31, 6, 47);
+		set.add("world", 32, 7, 33);
+		long[] blocks = set.getChunkBlocks("world", 1, 2);
+		assertEquals(2, blocks.length);
+		for (long block : blocks) {
+			assertEquals(1, MathUtil.blockKeyX(block) >> 4);
+			assertEquals(2, MathUtil.blockKeyZ(block) >> 4);
+			assertTrue(set.contains("world", MathUtil.blockKeyX(block), MathUtil.blockKeyY(block), MathUtil.blockKeyZ(block)));
+		}
+		assertEquals(0, set.getChunkBlocks("world", 5, 5).length);
+		assertEquals(0, set.getChunkBlocks("world_nether", 1, 2).length);
+	}
+}
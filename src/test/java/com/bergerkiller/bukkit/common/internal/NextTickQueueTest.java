@@ -0,0 +1,122 @@
+package com.bergerkiller.bukkit.common.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class NextTickQueueTest extends TestCase {
+
+	public void testOrder() {
+		NextTickQueue queue = new NextTickQueue();
+		final List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < 10; i++) {
+			queue.add(new NumberedTask(order, i));
+		}
+		assertNull(queue.poll());
+		queue.drain();
+		Runnable task;
+		while ((task = queue.poll()) != null) {
+			task.run();
+		}
+		assertEquals(10, order.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, order.get(i).intValue());
+		}
+	}
+
+	public void testPendingRunFirst() {
+		NextTickQueue queue = new NextTickQueue();
+		final List<Integer> order = new ArrayList<Integer>();
+		queue.add(new NumberedTask(order, 0));
+		queue.add(new NumberedTask(order, 1));
+		queue.drain();
+		queue.poll().run();
+		// Tasks left pending from a previous tick stay ahead of newly added tasks
+		queue.add(new NumberedTask(order, 2));
+		queue.drain();
+		queue.poll().run();
+		queue.poll().run();
+		assertNull(queue.poll());
+		assertEquals(0, order.get(0).intValue());
+		assertEquals(1, order.get(1).intValue());
+		assertEquals(2, order.get(2).intValue());
+	}
+
+	public void testCounters() {
+		NextTickQueue queue = new NextTickQueue();
+		for (int i = 0; i < 5; i++) {
+			queue.add(new NumberedTask(new ArrayList<Integer>(), i));
+		}
+		assertEquals(5, queue.getTotalAdded());
+		assertEquals(5, queue.getBacklog());
+		queue.drain();
+		queue.poll();
+		queue.poll();
+		assertEquals(2, queue.getTotalRun());
+		assertEquals(3, queue.getBacklog());
+	}
+
+	public void testConcurrentAdd() {
+		final NextTickQueue queue = new NextTickQueue();
+		final int threadCount = 4;
+		final int perThread = 10000;
+		final Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			final int base = t * perThread;
+			threads[t] = new Thread() {
+				public void run() {
+					final List<Integer> unused = new ArrayList<Integer>();
+					for (int i = 0; i < perThread; i++) {
+						queue.add(new NumberedTask(unused, base + i));
+					}
+				}
+			};
+			threads[t].start();
+		}
+		// Drain while the threads are adding, no task may be lost or returned twice
+		final boolean[] seen = new boolean[threadCount * perThread];
+		final int[] lastPerThread = new int[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			lastPerThread[t] = -1;
+		}
+		int count = 0;
+		boolean alive;
+		do {
+			// Threads that finished before draining have all their tasks drained
+			alive = false;
+			for (Thread thread : threads) {
+				alive |= thread.isAlive();
+			}
+			queue.drain();
+			Runnable task;
+			while ((task = queue.poll()) != null) {
+				final int number = ((NumberedTask) task).number;
+				assertFalse(seen[number]);
+				seen[number] = true;
+				// Tasks added by the same thread keep their order
+				final int thread = number / perThread;
+				assertTrue(number > lastPerThread[thread]);
+				lastPerThread[thread] = number;
+				count++;
+			}
+		} while (alive);
+		assertEquals(seen.length, count);
+		assertEquals(0, queue.getBacklog());
+	}
+
+	private static class NumberedTask implements Runnable {
+		private final List<Integer> order;
+		public final int number;
+
+		public NumberedTask(List<Integer> order, int number) {
+			this.order = order;
+			this.number = number;
+		}
+
+		@Override
+		public void run() {
+			this.order.add(this.number);
+		}
+	}
+}
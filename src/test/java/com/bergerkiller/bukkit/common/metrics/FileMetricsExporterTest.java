@@ -0,0 +1,114 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class FileMetricsExporterTest extends TestCase {
+	private static final long DAY = 24L * 60L * 60L * 1000L;
+	private File folder;
+
+	@Override
+	protected void setUp() throws IOException {
+		this.folder = File.createTempFile("metricstest", "");
+		this.folder.delete();
+	}
+
+	@Override
+	protected void tearDown() {
+		final File[] files = this.folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		this.folder.delete();
+	}
+
+	public void testJsonLines() throws IOException {
+		final FileMetricsExporter exporter = new FileMetricsExporter(this.folder, FileMetricsExporter.Format.JSON_LINES, 0);
+		final Map<String, Double> values = new TreeMap<String, Double>();
+		values.put("a.count", 3.0);
+		values.put("b \"quoted\"", 0.5);
+		values.put("c.nan", Double.NaN);
+		values.put("d.inf", Double.POSITIVE_INFINITY);
+		final long time = System.currentTimeMillis();
+		exporter.export(time, values);
+		exporter.export(time + 1, values);
+
+		final List<String> lines = readLines(new File(this.folder, "metrics-" + formatDate(time) + ".jsonl"));
+		assertEquals(2, lines.size());
+		// Values that are not finite can not be written in JSON and are left out
+		assertEquals("{\"time\":" + time + ",\"metrics\":{\"a.count\":3.0,\"b \\\"quoted\\\"\":0.5}}", lines.get(0));
+		assertTrue(lines.get(1).startsWith("{\"time\":" + (time + 1) + ","));
+	}
+
+	public void testDeleteOldFiles() throws IOException {
+		this.folder.mkdirs();
+		final long time = System.currentTimeMillis();
+		final File old = new File(this.folder, "metrics-" + formatDate(time - 10 * DAY) + ".jsonl");
+		final File recent = new File(this.folder, "metrics-" + formatDate(time - 2 * DAY) + ".jsonl");
+		final File other = new File(this.folder, "other.txt");
+		old.createNewFile();
+		recent.createNewFile();
+		other.createNewFile();
+		new FileMetricsExporter(this.folder, FileMetricsExporter.Format.JSON_LINES, 7).export(time, new TreeMap<String, Double>());
+		assertFalse(old.exists());
+		assertTrue(recent.exists());
+		assertTrue(other.exists());
+	}
+
+	public void testPrometheus() throws IOException {
+		final FileMetricsExporter exporter = new FileMetricsExporter(this.folder, FileMetricsExporter.Format.PROMETHEUS, 0);
+		final Map<String, Double> values = new TreeMap<String, Double>();
+		values.put("0bkcommonlib.nexttick.p99", 1.25);
+		values.put("graph.My-Plugin.Users", 10.0);
+		values.put("value.nan", Double.NaN);
+		values.put("value.inf", Double.NEGATIVE_INFINITY);
+		exporter.export(System.currentTimeMillis(), values);
+
+		final File file = new File(this.folder, "metrics.prom");
+		final List<String> lines = readLines(file);
+		assertEquals(8, lines.size());
+		// Names are sanitized, and no timestamps are written
+		assertEquals("# TYPE _bkcommonlib_nexttick_p99 gauge", lines.get(0));
+		assertEquals("_bkcommonlib_nexttick_p99 1.25", lines.get(1));
+		assertEquals("graph_My_Plugin_Users 10.0", lines.get(3));
+		assertEquals("value_inf -Inf", lines.get(5));
+		assertEquals("value_nan NaN", lines.get(7));
+		assertFalse(new File(this.folder, "metrics.prom.tmp").exists());
+
+		// The file is replaced by the next export
+		values.clear();
+		values.put("single", 1.0);
+		exporter.export(System.currentTimeMillis(), values);
+		assertEquals(2, readLines(file).size());
+	}
+
+	private static String formatDate(long time) {
+		return new SimpleDateFormat("yyyy-MM-dd").format(new Date(time));
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		final List<String> lines = new ArrayList<String>();
+		final BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+}
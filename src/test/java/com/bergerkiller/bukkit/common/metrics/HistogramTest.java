@@ -0,0 +1,79 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+import junit.framework.TestCase;
+
+public class HistogramTest extends TestCase {
+
+	public void testSnapshot() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getSnapshot().getCount());
+		TimingStatistic expected = new TimingStatistic();
+		for (long value = 0; value < 5000; value += 7) {
+			histogram.record(value * value);
+			expected.add(value * value);
+		}
+		TimingStatistic snapshot = histogram.getSnapshot();
+		assertEquals(expected.getCount(), snapshot.getCount());
+		assertEquals(expected.getTotal(), snapshot.getTotal());
+		assertEquals(expected.getMin(), snapshot.getMin());
+		assertEquals(expected.getMax(), snapshot.getMax());
+		for (double fraction : new double[] {0.5, 0.95, 0.99}) {
+			assertEquals(expected.getPercentile(fraction), snapshot.getPercentile(fraction));
+		}
+	}
+
+	public void testAddToAndReset() {
+		Histogram first = new Histogram();
+		Histogram second = new Histogram();
+		first.record(10);
+		first.record(-10);
+		second.record(1000);
+		TimingStatistic statistic = new TimingStatistic();
+		first.addTo(statistic);
+		second.addTo(statistic);
+		assertEquals(3, statistic.getCount());
+		assertEquals(0, statistic.getMin());
+		assertEquals(1000, statistic.getMax());
+
+		first.reset();
+		TimingStatistic snapshot = first.getSnapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getMax());
+	}
+
+	public void testConcurrentRecord() throws InterruptedException {
+		final Histogram histogram = new Histogram();
+		final Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final long offset = t;
+			threads[t] = new Thread() {
+				public void run() {
+					for (long i = 1; i <= 10000; i++) {
+						histogram.record(i * 4 + offset);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		TimingStatistic snapshot = histogram.getSnapshot();
+		assertEquals(40000, snapshot.getCount());
+		assertEquals(4, snapshot.getMin());
+		assertEquals(40003, snapshot.getMax());
+	}
+
+	public void testTimer() {
+		Timer timer = new Timer();
+		timer.time(new Runnable() {
+			public void run() {
+			}
+		});
+		final long elapsed = timer.stop(System.nanoTime() - 1000000L);
+		assertTrue(elapsed >= 1000000L);
+		TimingStatistic snapshot = timer.getSnapshot();
+		assertEquals(2, snapshot.getCount());
+		assertTrue(snapshot.getMax() >= 1000000L);
+	}
+}
@@ -0,0 +1,109 @@
+package com.bergerkiller.bukkit.common.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TimingStatisticTest extends TestCase {
+
+	public void testEmpty() {
+		TimingStatistic statistic = new TimingStatistic();
+		assertEquals(0, statistic.getCount());
+		assertEquals(0, statistic.getMin());
+		assertEquals(0, statistic.getMax());
+		assertEquals(0.0, statistic.getAverage(), 0.0);
+		assertEquals(0, statistic.getPercentile(0.5));
+	}
+
+	public void testBuckets() {
+		// Buckets never decrease for increasing values and stay within range
+		int last = 0;
+		for (long value = 0; value < 100000; value++) {
+			final int bucket = TimingStatistic.getBucket(value);
+			assertTrue(bucket >= last);
+			last = bucket;
+		}
+		assertTrue(TimingStatistic.getBucket(Long.MAX_VALUE) < TimingStatistic.BUCKET_COUNT);
+		// Small values are stored exactly
+		for (int value = 0; value < 8; value++) {
+			assertEquals(value, TimingStatistic.getBucket(value));
+		}
+	}
+
+	public void testExactPercentiles() {
+		TimingStatistic statistic = new TimingStatistic();
+		for (int value = 0; value < 8; value++) {
+			statistic.add(value);
+		}
+		assertEquals(8, statistic.getCount());
+		assertEquals(0, statistic.getMin());
+		assertEquals(7, statistic.getMax());
+		assertEquals(3.5, statistic.getAverage(), 0.0);
+		assertEquals(3, statistic.getPercentile(0.5));
+		assertEquals(7, statistic.getPercentile(1.0));
+		assertEquals(0, statistic.getPercentile(0.0));
+	}
+
+	public void testPercentileAccuracy() {
+		final Random random = new Random(42L);
+		final long[] samples = new long[10000];
+		TimingStatistic statistic = new TimingStatistic();
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (long) (random.nextDouble() * random.nextDouble() * 50000000.0);
+			statistic.add(samples[i]);
+		}
+		Arrays.sort(samples);
+		for (double fraction : new double[] {0.5, 0.9, 0.95, 0.99, 0.999}) {
+			final long exact = samples[(int) Math.ceil(fraction * samples.length) - 1];
+			final long estimate = statistic.getPercentile(fraction);
+			// The estimate is the upper bound of the bucket of the exact value: at most 1/8th above it
+			assertTrue(estimate >= exact);
+			assertTrue(estimate <= exact + exact / 8 + 1);
+		}
+		assertEquals(samples[samples.length - 1], statistic.getPercentile(1.0));
+	}
+
+	public void testMerge() {
+		TimingStatistic a = new TimingStatistic();
+		TimingStatistic b = new TimingStatistic();
+		TimingStatistic all = new TimingStatistic();
+		for (long value = 1; value <= 1000; value++) {
+			(value % 2 == 0 ? a : b).add(value * 1000);
+			all.add(value * 1000);
+		}
+		a.add(b);
+		assertEquals(all.getCount(), a.getCount());
+		assertEquals(all.getTotal(), a.getTotal());
+		assertEquals(all.getMin(), a.getMin());
+		assertEquals(all.getMax(), a.getMax());
+		assertEquals(all.getPercentile(0.95), a.getPercentile(0.95));
+
+		// Merging an empty statistic changes nothing
+		a.add(new TimingStatistic());
+		assertEquals(1000, a.getCount());
+		assertEquals(1000, a.getMin());
+	}
+
+	public void testAddBuckets() {
+		final long[] buckets = new long[TimingStatistic.BUCKET_COUNT];
+		buckets[TimingStatistic.getBucket(100)] += 1;
+		buckets[TimingStatistic.getBucket(300)] += 1;
+		TimingStatistic statistic = new TimingStatistic();
+		statistic.add(buckets, 400, 100, 300);
+		assertEquals(2, statistic.getCount());
+		assertEquals(200.0, statistic.getAverage(), 0.0);
+		assertEquals(100, statistic.getMin());
+		assertEquals(300, statistic.getMax());
+	}
+
+	public void testNegativeAndReset() {
+		TimingStatistic statistic = new TimingStatistic();
+		statistic.add(-50);
+		assertEquals(1, statistic.getCount());
+		assertEquals(0, statistic.getMax());
+		statistic.reset();
+		assertEquals(0, statistic.getCount());
+		assertEquals(0, statistic.getPercentile(0.99));
+	}
+}
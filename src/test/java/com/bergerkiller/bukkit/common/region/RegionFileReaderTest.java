@@ -0,0 +1,157 @@
+package com.bergerkiller.bukkit.common.region;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+public class RegionFileReaderTest extends TestCase {
+	private static final int SECTOR_SIZE = 4096;
+	private File folder;
+
+	@Override
+	protected void setUp() throws IOException {
+		this.folder = File.createTempFile("regiontest", "");
+		this.folder.delete();
+		this.folder.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() {
+		for (File file : this.folder.listFiles()) {
+			file.delete();
+		}
+		this.folder.delete();
+	}
+
+	public void testReadChunks() throws IOException {
+		final ByteBuffer region = ByteBuffer.allocate(5 * SECTOR_SIZE);
+		writeChunk(region, 1, 2, 2, 1234, 2, compress("zlib chunk", false));
+		writeChunk(region, 31, 31, 3, 5678, 1, compress("gzip chunk", true));
+		final RegionFileReader reader = new RegionFileReader(writeRegion("r.-1.3.mca", region));
+		assertEquals(-1, reader.getRegionX());
+		assertEquals(3, reader.getRegionZ());
+		assertEquals(2, reader.getChunkCount());
+
+		// World chunk coordinates map to the same chunk as coordinates relative to the region
+		assertTrue(reader.hasChunk(1, 2));
+		assertTrue(reader.hasChunk(-31, 98));
+		assertTrue(reader.hasChunk(31, 31));
+		assertFalse(reader.hasChunk(0, 0));
+		assertEquals(1234, reader.getTimestamp(1, 2));
+		assertEquals(0, reader.getTimestamp(0, 0));
+
+		assertEquals("zlib chunk", read(reader.openChunk(1, 2)));
+		assertEquals("gzip chunk", read(reader.openChunk(31, 31)));
+		assertNull(reader.openChunk(0, 0));
+
+		reader.close();
+		try {
+			reader.openChunk(1, 2);
+			fail("Reading a closed reader should fail");
+		} catch (IOException ex) {
+		}
+	}
+
+	public void testOffsetOutsideFile() throws IOException {
+		final ByteBuffer region = ByteBuffer.allocate(3 * SECTOR_SIZE);
+		writeChunk(region, 0, 0, 2, 0, 2, compress("valid", false));
+		// Sector offset that overflows an int when multiplied by the sector size
+		region.putInt(getIndex(1, 0) * 4, (0xFFFFFF << 8) | 1);
+		// Sectors exceeding the end of the file
+		region.putInt(getIndex(2, 0) * 4, (2 << 8) | 2);
+		// Sector pointing into the header
+		region.putInt(getIndex(3, 0) * 4, (1 << 8) | 1);
+		final RegionFileReader reader = new RegionFileReader(writeRegion("r.0.0.mca", region));
+		assertEquals(1, reader.getChunkCount());
+		for (int cx = 1; cx <= 3; cx++) {
+			assertFalse(reader.hasChunk(cx, 0));
+			assertOpenFails(reader, cx, 0);
+		}
+		assertEquals("valid", read(reader.openChunk(0, 0)));
+	}
+
+	public void testInvalidLength() throws IOException {
+		final ByteBuffer region = ByteBuffer.allocate(3 * SECTOR_SIZE);
+		writeChunk(region, 0, 0, 2, 0, 2, compress("chunk", false));
+		// The length plus its own 4 bytes must fit in the sectors of the chunk
+		region.putInt(2 * SECTOR_SIZE, SECTOR_SIZE - 3);
+		RegionFileReader reader = new RegionFileReader(writeRegion("r.0.0.mca", region));
+		assertOpenFails(reader, 0, 0);
+
+		region.putInt(2 * SECTOR_SIZE, 0);
+		reader = new RegionFileReader(writeRegion("r.0.0.mca", region));
+		assertOpenFails(reader, 0, 0);
+	}
+
+	public void testUnknownCompression() throws IOException {
+		final ByteBuffer region = ByteBuffer.allocate(3 * SECTOR_SIZE);
+		writeChunk(region, 0, 0, 2, 0, 3, compress("chunk", false));
+		assertOpenFails(new RegionFileReader(writeRegion("r.0.0.mca", region)), 0, 0);
+	}
+
+	public void testTruncatedFile() throws IOException {
+		final RegionFileReader reader = new RegionFileReader(writeRegion("r.0.0.mca", ByteBuffer.allocate(100)));
+		assertEquals(0, reader.getChunkCount());
+		assertNull(reader.openChunk(0, 0));
+	}
+
+	private static void assertOpenFails(RegionFileReader reader, int cx, int cz) {
+		try {
+			reader.openChunk(cx, cz);
+			fail("Chunk [" + cx + ", " + cz + "] should be corrupt");
+		} catch (IOException ex) {
+		}
+	}
+
+	private static int getIndex(int cx, int cz) {
+		return (cx & 31) | ((cz & 31) << 5);
+	}
+
+	private static void writeChunk(ByteBuffer region, int cx, int cz, int sector, int timestamp, int compression, byte[] data) {
+		final int sectors = (data.length + 5 + SECTOR_SIZE - 1) / SECTOR_SIZE;
+		region.putInt(getIndex(cx, cz) * 4, (sector << 8) | sectors);
+		region.putInt(SECTOR_SIZE + getIndex(cx, cz) * 4, timestamp);
+		region.putInt(sector * SECTOR_SIZE, data.length + 1);
+		region.put(sector * SECTOR_SIZE + 4, (byte) compression);
+		for (int i = 0; i < data.length; i++) {
+			region.put(sector * SECTOR_SIZE + 5 + i, data[i]);
+		}
+	}
+
+	private static byte[] compress(String text, boolean gzip) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final OutputStream stream = gzip ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes);
+		stream.write(text.getBytes("UTF-8"));
+		stream.close();
+		return bytes.toByteArray();
+	}
+
+	private static String read(DataInputStream stream) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int b;
+		while ((b = stream.read()) != -1) {
+			bytes.write(b);
+		}
+		stream.close();
+		return bytes.toString("UTF-8");
+	}
+
+	private File writeRegion(String name, ByteBuffer region) throws IOException {
+		final File file = new File(this.folder, name);
+		final FileOutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(region.array());
+		} finally {
+			stream.close();
+		}
+		return file;
+	}
+}